@@ -0,0 +1,513 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor which generates a codec class for each record or class annotated
+ * with <code>rs.igram.kiribi.io.Encoded</code>.
+ *
+ * <p>The generated code is straight-line: each component is written and read with the 
+ * <code>VarOutput</code> and <code>VarInput</code> method for its static type, without 
+ * reflection or boxing of primitive components. Unsupported types are reported as 
+ * compilation errors against the offending element.</p>
+ *
+ * <p>The processor targets Java 11 and so detects records by their element kind name, 
+ * encoding their components, which are the non-static fields of the record, through 
+ * their accessor methods.</p>
+ *
+ * @author Michael Sargent
+ */
+@SupportedAnnotationTypes(CodecProcessor.ENCODED)
+public final class CodecProcessor extends AbstractProcessor {
+	static final String ENCODED = "rs.igram.kiribi.io.Encoded";
+	private static final String IO = "rs.igram.kiribi.io.";
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+	
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+		for(var annotation : annotations){
+			for(var e : env.getElementsAnnotatedWith(annotation)){
+				try{
+					generate((TypeElement)e);
+				}catch(CodecException ex){
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, ex.getMessage(), ex.element);
+				}catch(IOException ex){
+					processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write codec: "+ex, e);
+				}
+			}
+		}
+		return true;
+	}
+	
+	private void generate(TypeElement type) throws IOException {
+		final var record = type.getKind().name().equals("RECORD");
+		if(!record && type.getKind() != ElementKind.CLASS) 
+			throw new CodecException(type, "@Encoded may only be applied to records and classes");
+		if(!type.getTypeParameters().isEmpty()) 
+			throw new CodecException(type, "@Encoded types may not be generic");
+		for(Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()){
+			if(e.getModifiers().contains(Modifier.PRIVATE)) 
+				throw new CodecException(type, "@Encoded types may not be private");
+			if(((TypeElement)e).getNestingKind() == NestingKind.MEMBER && !e.getModifiers().contains(Modifier.STATIC)
+				&& e.getEnclosingElement().getKind() != ElementKind.INTERFACE)
+				throw new CodecException(type, "@Encoded types may not be inner classes");
+		}
+		
+		final var fields = new ArrayList<VariableElement>();
+		for(var f : ElementFilter.fieldsIn(type.getEnclosedElements())){
+			final var modifiers = f.getModifiers();
+			if(modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)) continue;
+			if(!record && (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)))
+				throw new CodecException(f, "Encoded fields may be neither private nor final");
+			fields.add(f);
+		}
+		if(!record && type.getModifiers().contains(Modifier.ABSTRACT))
+			throw new CodecException(type, "@Encoded classes may not be abstract");
+		if(!record && !constructor(type, 0)) 
+			throw new CodecException(type, "@Encoded classes must have a non-private no-arg constructor");
+		
+		final var name = codec(type);
+		final var pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		final var qualified = type.getQualifiedName().toString();
+		final var g = new Generator(fields, record);
+		
+		final var src = new StringBuilder();
+		if(!pkg.isEmpty()) src.append("package ").append(pkg).append(";\n\n");
+		src.append("/**\n * Codec for <code>").append(type.getSimpleName()).append("</code>, generated by ")
+			.append(CodecProcessor.class.getName()).append(".\n */\n")
+			.append(exported(type) ? "public " : "").append("final class ").append(name).append(" {\n")
+			.append("\tpublic static final ").append(IO).append("Decoder<").append(qualified).append("> DECODER = ")
+			.append(name).append("::read;\n\n")
+			.append("\tprivate ").append(name).append("() {}\n\n")
+			.append("\tpublic static void write(").append(qualified).append(" value, ").append(IO)
+			.append("VarOutput out) throws java.io.IOException {\n")
+			.append(g.write())
+			.append("\t}\n\n")
+			.append("\tpublic static ").append(qualified).append(" read(").append(IO).append("VarInput ")
+			.append(g.in).append(") throws java.io.IOException {\n")
+			.append(g.read(qualified))
+			.append("\t}\n\n")
+			.append("\tpublic static ").append(IO).append("Encodable encodable(").append(qualified).append(" value) {\n")
+			.append("\t\treturn out -> write(value, out);\n")
+			.append("\t}\n")
+			.append("}\n");
+		
+		final var file = processingEnv.getFiler().createSourceFile(pkg.isEmpty() ? name : pkg+"."+name, type);
+		try(var w = file.openWriter()){
+			w.write(src.toString());
+		}
+	}
+	
+	// Outer_InnerCodec for nested types
+	private static String codec(TypeElement type) {
+		final var name = new StringBuilder(type.getSimpleName()).append("Codec");
+		for(var e = type.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()){
+			name.insert(0, '_').insert(0, e.getSimpleName());
+		}
+		return name.toString();
+	}
+	
+	private static boolean exported(TypeElement type) {
+		for(Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()){
+			if(!e.getModifiers().contains(Modifier.PUBLIC)) return false;
+		}
+		return true;
+	}
+	
+	// true if the type has a non-private constructor with the given number of parameters,
+	// the single parameter being a VarInput if there is one
+	private boolean constructor(TypeElement type, int params) {
+		for(var c : ElementFilter.constructorsIn(type.getEnclosedElements())){
+			if(c.getModifiers().contains(Modifier.PRIVATE) || c.getParameters().size() != params) continue;
+			if(params == 0 || is(c.getParameters().get(0).asType(), IO+"VarInput")) return true;
+		}
+		return false;
+	}
+	
+	private TypeMirror erasure(String name) {
+		final var e = processingEnv.getElementUtils().getTypeElement(name);
+		return e == null ? null : processingEnv.getTypeUtils().erasure(e.asType());
+	}
+	
+	private boolean is(TypeMirror t, String name) {
+		final var types = processingEnv.getTypeUtils();
+		return types.isSameType(types.erasure(t), erasure(name));
+	}
+	
+	private boolean isA(TypeMirror t, String name) {
+		final var target = erasure(name);
+		final var types = processingEnv.getTypeUtils();
+		return target != null && types.isAssignable(types.erasure(t), target);
+	}
+	
+	private TypeMirror unboxed(TypeMirror t) {
+		try{
+			return processingEnv.getTypeUtils().unboxedType(t);
+		}catch(IllegalArgumentException e){
+			return null;
+		}
+	}
+	
+	// resolves the type arguments of t as a subtype of the generic type name
+	private List<? extends TypeMirror> arguments(TypeMirror t, String name, Element src) {
+		if(is(t, name)){
+			final var args = new ArrayList<TypeMirror>();
+			for(var a : ((DeclaredType)t).getTypeArguments()){
+				if(a.getKind() == TypeKind.WILDCARD) a = ((WildcardType)a).getExtendsBound();
+				if(a == null || a.getKind() == TypeKind.TYPEVAR) 
+					throw new CodecException(src, "Unresolved type argument in "+t);
+				args.add(a);
+			}
+			if(args.isEmpty()) throw new CodecException(src, "Raw type "+t+" is not supported");
+			return args;
+		}
+		for(var s : processingEnv.getTypeUtils().directSupertypes(t)){
+			if(isA(s, name)) return arguments(s, name, src);
+		}
+		throw new CodecException(src, t+" is not a "+name);
+	}
+	
+	private String implementation(TypeMirror t, Element src) {
+		switch(processingEnv.getTypeUtils().erasure(t).toString()) {
+		case "java.util.Collection":
+		case "java.util.List": 
+			return "java.util.ArrayList";
+		case "java.util.Set": 
+			return "java.util.LinkedHashSet";
+		case "java.util.SortedSet":
+		case "java.util.NavigableSet": 
+			return "java.util.TreeSet";
+		case "java.util.Queue":
+		case "java.util.Deque": 
+			return "java.util.ArrayDeque";
+		case "java.util.Map": 
+			return "java.util.LinkedHashMap";
+		case "java.util.SortedMap":
+		case "java.util.NavigableMap": 
+			return "java.util.TreeMap";
+		default:
+			final var e = (TypeElement)processingEnv.getTypeUtils().asElement(t);
+			if(e.getKind() != ElementKind.CLASS || e.getModifiers().contains(Modifier.ABSTRACT) || !constructor(e, 0))
+				throw new CodecException(src, "No implementation available for "+t);
+			return null;
+		}
+	}
+	
+	/*
+	 * Emits the body of the write and read methods. Nested collections and arrays are
+	 * unrolled into loops over numbered locals so that each value is read in order.
+	 */
+	private final class Generator {
+		private final List<VariableElement> fields;
+		private final boolean record;
+		final String in;
+		private StringBuilder sb;
+		private String indent;
+		private int n;
+		
+		Generator(List<VariableElement> fields, boolean record) {
+			this.fields = fields;
+			this.record = record;
+			var in = "in";
+			for(var f : fields) if(f.getSimpleName().contentEquals(in)) in = "in$";
+			this.in = in;
+		}
+		
+		String write() {
+			sb = new StringBuilder();
+			indent = "\t\t";
+			for(var f : fields){
+				final var name = f.getSimpleName();
+				write(f.asType(), record ? "value."+name+"()" : "value."+name, f);
+			}
+			return sb.toString();
+		}
+		
+		String read(String type) {
+			sb = new StringBuilder();
+			indent = "\t\t";
+			if(record){
+				final var args = new StringBuilder();
+				for(var f : fields){
+					final var name = f.getSimpleName().toString();
+					final var v = read(f.asType(), f);
+					line("final "+f.asType()+" "+name+" = "+v+";");
+					if(args.length() > 0) args.append(", ");
+					args.append(name);
+				}
+				line("return new "+type+"("+args+");");
+			}else{
+				line("final var value = new "+type+"();");
+				for(var f : fields){
+					final var v = read(f.asType(), f);
+					line("value."+f.getSimpleName()+" = "+v+";");
+				}
+				line("return value;");
+			}
+			return sb.toString();
+		}
+		
+		private void line(String s) {
+			sb.append(indent).append(s).append('\n');
+		}
+		
+		private void open(String s) {
+			line(s+"{");
+			indent += "\t";
+		}
+		
+		private void close() {
+			indent = indent.substring(1);
+			line("}");
+		}
+		
+		private String primitive(TypeKind kind, Element src) {
+			switch(kind) {
+			case BOOLEAN: return "Boolean";
+			case BYTE: 	  return "Byte";
+			case SHORT:   return "Short";
+			case CHAR: 	  return "Char";
+			case INT: 	  return "Int";
+			case LONG: 	  return "Long";
+			case FLOAT:   return "Float";
+			case DOUBLE:  return "Double";
+			default: throw new CodecException(src, "Unsupported type "+kind);
+			}
+		}
+		
+		private void write(TypeMirror t, String v, Element src) {
+			if(t.getKind().isPrimitive()){
+				line("out.write"+primitive(t.getKind(), src)+"("+v+");");
+				return;
+			}
+			if(t.getKind() == TypeKind.ARRAY){
+				final var c = ((ArrayType)t).getComponentType();
+				switch(c.getKind()) {
+				case BYTE:   line("out.writeBytes("+v+");"); return;
+				case SHORT:  line("out.writeShorts("+v+");"); return;
+				case INT:    line("out.writeInts("+v+");"); return;
+				case LONG:   line("out.writeLongs("+v+");"); return;
+				case DOUBLE: line("out.writeDoubles("+v+");"); return;
+				default:
+				}
+				final var a = "a$"+(++n);
+				final var e = "e$"+n;
+				line("final var "+a+" = "+v+";");
+				line("out.writeVarInt("+a+".length);");
+				loop("for(final var "+e+" : "+a+")", () -> write(c, e, src));
+				return;
+			}
+			if(t.getKind() != TypeKind.DECLARED) throw new CodecException(src, "Unsupported type "+t);
+			final var u = unboxed(t);
+			if(u != null){
+				write(u, v, src);
+			}else if(is(t, "java.lang.String")){
+				line("out.writeString("+v+");");
+			}else if(is(t, "java.math.BigInteger")){
+				line("out.writeBigInteger("+v+");");
+			}else if(is(t, "java.net.InetSocketAddress")){
+				line("out.writeSocketAddress("+v+");");
+			}else if(processingEnv.getTypeUtils().asElement(t).getKind() == ElementKind.ENUM){
+				line("out.writeEnum("+v+");");
+			}else if(encoded(t)){
+				line(qualifiedCodec(t)+".write("+v+", out);");
+			}else if(isA(t, IO+"Encodable")){
+				line("out.write("+v+");");
+			}else if(isA(t, "java.util.Map")){
+				final var args = arguments(t, "java.util.Map", src);
+				final var m = "m$"+(++n);
+				final var e = "e$"+n;
+				line("final var "+m+" = "+v+";");
+				line("out.writeVarInt("+m+".size());");
+				open("for(final var "+e+" : "+m+".entrySet())");
+				write(args.get(0), e+".getKey()", src);
+				write(args.get(1), e+".getValue()", src);
+				close();
+			}else if(isA(t, "java.util.Collection")){
+				final var c = arguments(t, "java.util.Collection", src).get(0);
+				final var l = "c$"+(++n);
+				final var e = "e$"+n;
+				line("final var "+l+" = "+v+";");
+				line("out.writeVarInt("+l+".size());");
+				loop("for(final var "+e+" : "+l+")", () -> write(c, e, src));
+			}else{
+				throw new CodecException(src, "Unsupported type "+t);
+			}
+		}
+		
+		// returns an expression yielding the value read, emitting any statements needed first
+		private String read(TypeMirror t, Element src) {
+			if(t.getKind().isPrimitive()) return in+".read"+primitive(t.getKind(), src)+"()";
+			if(t.getKind() == TypeKind.ARRAY){
+				final var c = ((ArrayType)t).getComponentType();
+				switch(c.getKind()) {
+				case BYTE:   return in+".readBytes()";
+				case SHORT:  return in+".readShortArray()";
+				case INT:    return in+".readIntArray()";
+				case LONG:   return in+".readLongArray()";
+				case DOUBLE: return in+".readDoubleArray()";
+				default:
+				}
+				var base = c;
+				var dims = "";
+				for(; base.getKind() == TypeKind.ARRAY; base = ((ArrayType)base).getComponentType()) dims += "[]";
+				if(base.getKind() == TypeKind.DECLARED && !((DeclaredType)base).getTypeArguments().isEmpty())
+					throw new CodecException(src, "Arrays of generic types are not supported");
+				final var a = "a$"+(++n);
+				final var i = "i$"+n;
+				line("final var "+a+" = new "+base+"["+in+".readVarInt()]"+dims+";");
+				loop("for(int "+i+" = 0; "+i+" < "+a+".length; "+i+"++)", () -> {
+					final var x = read(c, src);
+					line(a+"["+i+"] = "+x+";");
+				});
+				return a;
+			}
+			if(t.getKind() != TypeKind.DECLARED) throw new CodecException(src, "Unsupported type "+t);
+			final var u = unboxed(t);
+			if(u != null) return read(u, src);
+			if(is(t, "java.lang.String")) return in+".readString()";
+			if(is(t, "java.math.BigInteger")) return in+".readBigInteger()";
+			if(is(t, "java.net.InetSocketAddress")) return in+".readSocketAddress()";
+			final var element = (TypeElement)processingEnv.getTypeUtils().asElement(t);
+			if(element.getKind() == ElementKind.ENUM) return in+".readEnum("+element.getQualifiedName()+".class)";
+			if(encoded(t)) return qualifiedCodec(t)+".read("+in+")";
+			if(isA(t, IO+"Encodable")){
+				if(!constructor(element, 1)) 
+					throw new CodecException(src, t+" has no non-private constructor taking a VarInput");
+				return "new "+t+"("+in+")";
+			}
+			final var map = isA(t, "java.util.Map");
+			if(!map && !isA(t, "java.util.Collection")) throw new CodecException(src, "Unsupported type "+t);
+			final var args = arguments(t, map ? "java.util.Map" : "java.util.Collection", src);
+			final var impl = implementation(t, src);
+			final var v = "v$"+(++n);
+			final var size = "n$"+n;
+			final var i = "i$"+n;
+			final var k = "k$"+n;
+			line("final int "+size+" = "+in+".readVarInt();");
+			if(impl == null){
+				line("final "+t+" "+v+" = new "+processingEnv.getTypeUtils().erasure(t)
+					+(((DeclaredType)t).getTypeArguments().isEmpty() ? "" : "<>")+"();");
+			}else{
+				final var presize = impl.equals("java.util.ArrayList") || impl.equals("java.util.ArrayDeque");
+				line("final "+processingEnv.getTypeUtils().erasure(t)+"<"+join(args)+"> "+v+" = new "+impl+"<>("
+					+(presize ? size : "")+");");
+			}
+			loop("for(int "+i+" = 0; "+i+" < "+size+"; "+i+"++)", () -> {
+				if(map){
+					line("final "+args.get(0)+" "+k+" = "+read(args.get(0), src)+";");
+					final var x = read(args.get(1), src);
+					line(v+".put("+k+", "+x+");");
+				}else{
+					final var x = read(args.get(0), src);
+					line(v+".add("+x+");");
+				}
+			});
+			return v;
+		}
+		
+		// emits a loop, on a single line if its body is a single statement
+		private void loop(String head, Runnable body) {
+			final var outer = sb;
+			final var level = indent;
+			sb = new StringBuilder();
+			indent = level+"\t";
+			body.run();
+			final var inner = sb.toString();
+			sb = outer;
+			indent = level;
+			if(inner.indexOf('\n') == inner.length() - 1){
+				line(head+" "+inner.trim());
+			}else{
+				line(head+"{");
+				sb.append(inner);
+				line("}");
+			}
+		}
+		
+		private String join(List<? extends TypeMirror> types) {
+			final var s = new StringBuilder();
+			for(var t : types){
+				if(s.length() > 0) s.append(", ");
+				s.append(t);
+			}
+			return s.toString();
+		}
+	}
+	
+	private boolean encoded(TypeMirror t) {
+		final var e = processingEnv.getTypeUtils().asElement(t);
+		for(var a : e.getAnnotationMirrors()){
+			if(((TypeElement)a.getAnnotationType().asElement()).getQualifiedName().contentEquals(ENCODED)) return true;
+		}
+		return false;
+	}
+	
+	private String qualifiedCodec(TypeMirror t) {
+		final var e = (TypeElement)processingEnv.getTypeUtils().asElement(t);
+		final var pkg = processingEnv.getElementUtils().getPackageOf(e).getQualifiedName().toString();
+		return pkg.isEmpty() ? codec(e) : pkg+"."+codec(e);
+	}
+	
+	/*
+	 * Thrown to report an unsupported type or declaration against the element at fault.
+	 */
+	private static final class CodecException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final transient Element element;
+		
+		CodecException(Element element, String message) {
+			super(message);
+			this.element = element;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the <code>ByteUtils</code> helpers.
+ *
+ * @author Michael Sargent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteUtilsBenchmark {
+	@Param({"20", "256", "4096"})
+	int length;
+	
+	private byte[] a;
+	private byte[] b;
+	private byte[] c;
+	
+	@Setup
+	public void setup() {
+		var random = new Random(length);
+		a = new byte[length];
+		b = new byte[length];
+		c = new byte[length];
+		random.nextBytes(a);
+		random.nextBytes(c);
+		// b is a mask of a so that matches() scans the whole array
+		for(int i = 0; i < length; i++) b[i] = (byte)(a[i] & c[i]);
+	}
+	
+	@Benchmark
+	public byte[] xor() {
+		return ByteUtils.xor(a, b, length);
+	}
+	
+	@Benchmark
+	public byte[] xorInto() {
+		ByteUtils.xor(a, 0, b, 0, c, 0, length);
+		return c;
+	}
+	
+	@Benchmark
+	public boolean matches() {
+		return ByteUtils.matches(a, b, length);
+	}
+	
+	@Benchmark
+	public byte[] concat() {
+		return ByteUtils.concat(a, b, c);
+	}
+	
+	@Benchmark
+	public long getLong() {
+		return ByteUtils.getLong(a, length - 8);
+	}
+	
+	@Benchmark
+	public long getLongLE() {
+		return ByteUtils.getLongLE(a, length - 8);
+	}
+	
+	@Benchmark
+	public int getInt() {
+		return ByteUtils.getInt(a, length - 4);
+	}
+	
+	@Benchmark
+	public byte[] putInt() {
+		ByteUtils.put(c, length - 4, length);
+		return c;
+	}
+}
@@ -0,0 +1,75 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks writing and reading length prefixed byte arrays of several sizes.
+ *
+ * @author Michael Sargent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BytesBenchmark {
+	@Param({"16", "1024", "65536"})
+	int length;
+	
+	@Param({Codec.STREAM, Codec.BUFFER, Codec.DIRECT})
+	String codec;
+	
+	private Codec c;
+	private byte[] payload;
+	
+	@Setup
+	public void setup() throws IOException {
+		payload = new byte[length];
+		new Random(length).nextBytes(payload);
+		c = Codec.of(codec, length + 4);
+		var out = new ByteArrayVarOutput();
+		out.writeBytes(payload);
+		c.load(out.toByteArray());
+	}
+	
+	@Benchmark
+	public VarOutput writeBytes() throws IOException {
+		final var out = c.output();
+		out.writeBytes(payload);
+		return out;
+	}
+	
+	@Benchmark
+	public byte[] readBytes() throws IOException {
+		return c.input().readBytes();
+	}
+}
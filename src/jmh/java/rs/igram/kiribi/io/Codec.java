@@ -0,0 +1,123 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+// Resettable VarInput and VarOutput for each codec implementation under benchmark
+abstract class Codec {
+	// names of the implementations, for use with @Param
+	static final String STREAM = "stream";
+	static final String BUFFER = "buffer";
+	static final String DIRECT = "direct";
+	
+	// returns an empty output
+	abstract VarOutput output();
+	
+	// returns an input positioned at the start of the loaded data
+	abstract VarInput input();
+	
+	// loads the data to be read
+	abstract void load(byte[] data);
+	
+	static Codec of(String name, int capacity) {
+		switch(name){
+		case STREAM: return new Stream(capacity);
+		case BUFFER: return new Buffer(capacity, false);
+		case DIRECT: return new Buffer(capacity, true);
+		default: throw new IllegalArgumentException("Unknown codec: "+name);
+		}
+	}
+	
+	// VarInputStream and VarOutputStream over byte arrays
+	static final class Stream extends Codec {
+		private final ByteArrayOutputStream bytes;
+		private final VarOutputStream out;
+		private ByteArrayInputStream src;
+		private VarInputStream in;
+		
+		Stream(int capacity) {
+			bytes = new ByteArrayOutputStream(capacity);
+			out = new VarOutputStream(bytes);
+		}
+		
+		@Override
+		VarOutput output() {
+			bytes.reset();
+			return out;
+		}
+		
+		@Override
+		VarInput input() {
+			src.reset();
+			return in;
+		}
+		
+		@Override
+		void load(byte[] data) {
+			src = new ByteArrayInputStream(data);
+			in = new VarInputStream(src);
+		}
+	}
+	
+	// ByteBufferVarInput and ByteBufferVarOutput over heap or direct buffers
+	static final class Buffer extends Codec {
+		private final boolean direct;
+		private final ByteBuffer dst;
+		private final ByteBufferVarOutput out;
+		private ByteBuffer src;
+		private ByteBufferVarInput in;
+		
+		Buffer(int capacity, boolean direct) {
+			this.direct = direct;
+			dst = allocate(capacity);
+			out = new ByteBufferVarOutput(dst);
+		}
+		
+		private ByteBuffer allocate(int capacity) {
+			return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		}
+		
+		@Override
+		VarOutput output() {
+			dst.clear();
+			return out;
+		}
+		
+		@Override
+		VarInput input() {
+			src.rewind();
+			return in;
+		}
+		
+		@Override
+		void load(byte[] data) {
+			src = allocate(data.length).put(data).flip();
+			in = new ByteBufferVarInput(src);
+		}
+	}
+}
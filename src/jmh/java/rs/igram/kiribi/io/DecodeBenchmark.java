@@ -0,0 +1,110 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks reading socket addresses and VarChar strings.
+ *
+ * @author Michael Sargent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+	@Param({"8", "64", "512"})
+	int chars;
+	
+	@Param({Codec.STREAM, Codec.BUFFER})
+	String codec;
+	
+	private Codec ipv4;
+	private Codec ipv6;
+	private Codec varchar;
+	private final AddressCache cache = new AddressCache(1024);
+	
+	@Setup
+	public void setup() throws IOException {
+		ipv4 = Codec.of(codec, 0);
+		ipv4.load(socketAddress(new byte[]{(byte)192, (byte)168, 1, 17}, 7777));
+		ipv6 = Codec.of(codec, 0);
+		ipv6.load(socketAddress(InetAddress.getByName("fe80::1:2:3:4").getAddress(), 7777));
+		
+		var s = new StringBuilder();
+		for(int i = 0; i < chars; i++) s.append((char)('a' + i % 26));
+		var out = new ByteArrayVarOutput();
+		out.writeVarInt(chars);
+		out.writeBytes(s.toString());
+		varchar = Codec.of(codec, 0);
+		varchar.load(out.toByteArray());
+	}
+	
+	// 16 byte address, IPv4 addresses mapped, followed by big endian port
+	private static byte[] socketAddress(byte[] addr, int port) throws IOException {
+		var out = new ByteArrayVarOutput();
+		if(addr.length == 4){
+			out.write(new byte[10]);
+			out.write(0xFF);
+			out.write(0xFF);
+		}
+		out.write(addr);
+		out.writeUInt16BE(port);
+		return out.toByteArray();
+	}
+	
+	@Benchmark
+	public InetSocketAddress readSocketAddressIPv4() throws IOException {
+		return ipv4.input().readSocketAddress();
+	}
+	
+	@Benchmark
+	public InetSocketAddress readSocketAddressIPv6() throws IOException {
+		return ipv6.input().readSocketAddress();
+	}
+	
+	@Benchmark
+	public InetSocketAddress readSocketAddressIPv4Cached() throws IOException {
+		return ipv4.input().readSocketAddress(cache);
+	}
+	
+	@Benchmark
+	public InetSocketAddress readSocketAddressIPv6Cached() throws IOException {
+		return ipv6.input().readSocketAddress(cache);
+	}
+	
+	@Benchmark
+	public String readVarChar() throws IOException {
+		return varchar.input().readVarChar();
+	}
+}
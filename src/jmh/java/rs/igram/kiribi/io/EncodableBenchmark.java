@@ -0,0 +1,119 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks encoding, sizing and copying a representative message.
+ *
+ * @author Michael Sargent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodableBenchmark {
+	// number of nested entries in the message
+	@Param({"1", "16", "256"})
+	int entries;
+	
+	private Message message;
+	private byte[] encoded;
+	
+	@Setup
+	public void setup() throws IOException {
+		message = new Message(new Random(entries), entries);
+		encoded = message.encode();
+	}
+	
+	@Benchmark
+	public byte[] encode() throws IOException {
+		return message.encode();
+	}
+	
+	@Benchmark
+	public int encodedSize() throws IOException {
+		return message.encodedSize();
+	}
+	
+	@Benchmark
+	public Message decode() throws IOException {
+		return Message.DECODER.decode(encoded);
+	}
+	
+	@Benchmark
+	public Message copy() throws IOException {
+		return message.copy(Message.DECODER);
+	}
+	
+	static final class Message implements Encodable {
+		static final Decoder<Message> DECODER = Message::new;
+		
+		private final long id;
+		private final int flags;
+		private final String topic;
+		private final byte[] payload;
+		private final List<EncodableBytes> entries = new ArrayList<>();
+		
+		Message(Random random, int n) {
+			id = random.nextLong();
+			flags = random.nextInt();
+			topic = "kiribi/benchmark/" + n;
+			payload = new byte[64];
+			random.nextBytes(payload);
+			for(int i = 0; i < n; i++){
+				var b = new byte[16 + random.nextInt(32)];
+				random.nextBytes(b);
+				entries.add(new EncodableBytes(b));
+			}
+		}
+		
+		Message(VarInput in) throws IOException {
+			id = in.readLong();
+			flags = in.readVarInt();
+			topic = in.readUTF();
+			payload = in.readBytes();
+			in.read(entries, EncodableBytes::new);
+		}
+		
+		@Override
+		public void write(VarOutput out) throws IOException {
+			out.writeLong(id);
+			out.writeVarInt(flags & 0x7FFFFFFFl);
+			out.writeUTF(topic);
+			out.writeBytes(payload);
+			out.write(entries);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks writing and reading eight byte unsigned values in little and big endian
+ * byte order.
+ *
+ * @author Michael Sargent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixedWidthBenchmark {
+	@Param({Codec.STREAM, Codec.BUFFER, Codec.DIRECT})
+	String codec;
+	
+	private Codec c;
+	private long value = 0x0123456789ABCDEFl;
+	
+	@Setup
+	public void setup() throws IOException {
+		c = Codec.of(codec, 16);
+		var out = new ByteArrayVarOutput();
+		out.writeUInt64(value);
+		out.writeUInt64BE(value);
+		c.load(out.toByteArray());
+	}
+	
+	@Benchmark
+	public VarOutput writeUInt64() throws IOException {
+		final var out = c.output();
+		out.writeUInt64(value);
+		return out;
+	}
+	
+	@Benchmark
+	public VarOutput writeUInt64BE() throws IOException {
+		final var out = c.output();
+		out.writeUInt64BE(value);
+		return out;
+	}
+	
+	@Benchmark
+	public long readULong64() throws IOException {
+		return c.input().readULong64();
+	}
+	
+	@Benchmark
+	public long readULong64BE() throws IOException {
+		final var in = c.input();
+		in.skipBytes(8);
+		return in.readULong64BE();
+	}
+}
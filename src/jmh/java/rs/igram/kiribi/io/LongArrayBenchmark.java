@@ -0,0 +1,98 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks writing and reading arrays of longs against the boxed collection codecs
+ * which share the same wire format.
+ *
+ * @author Michael Sargent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongArrayBenchmark {
+	@Param({"100", "10000"})
+	int length;
+	
+	@Param({Codec.STREAM, Codec.BUFFER})
+	String codec;
+	
+	private Codec c;
+	private long[] array;
+	private List<Long> list;
+	
+	@Setup
+	public void setup() throws IOException {
+		var random = new Random(length);
+		array = new long[length];
+		list = new ArrayList<>(length);
+		for(int i = 0; i < length; i++){
+			array[i] = random.nextLong();
+			list.add(array[i]);
+		}
+		c = Codec.of(codec, 9 + 8 * length);
+		var out = new ByteArrayVarOutput();
+		out.writeLongs(array);
+		c.load(out.toByteArray());
+	}
+	
+	@Benchmark
+	public VarOutput writeLongArray() throws IOException {
+		final var out = c.output();
+		out.writeLongs(array);
+		return out;
+	}
+	
+	@Benchmark
+	public VarOutput writeLongCollection() throws IOException {
+		final var out = c.output();
+		out.writeLongs(list);
+		return out;
+	}
+	
+	@Benchmark
+	public long[] readLongArray() throws IOException {
+		return c.input().readLongArray();
+	}
+	
+	@Benchmark
+	public List<Long> readLongCollection() throws IOException {
+		final var result = new ArrayList<Long>(length);
+		c.input().readLongs(result);
+		return result;
+	}
+}
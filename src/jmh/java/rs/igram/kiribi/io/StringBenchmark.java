@@ -0,0 +1,107 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the modified UTF-8, Latin-1 and UTF-8 string codecs on an ascii string.
+ *
+ * @author Michael Sargent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringBenchmark {
+	@Param({"16", "256"})
+	int length;
+	
+	@Param({Codec.STREAM, Codec.BUFFER, Codec.DIRECT})
+	String codec;
+	
+	private Codec utf;
+	private Codec varChar;
+	private Codec string;
+	private String s;
+	
+	@Setup
+	public void setup() throws IOException {
+		s = "metadata-value-0123456789".repeat(length / 16 + 1).substring(0, length);
+		utf = Codec.of(codec, length + 16);
+		varChar = Codec.of(codec, length + 16);
+		string = Codec.of(codec, length + 16);
+		var out = new ByteArrayVarOutput();
+		out.writeUTF(s);
+		utf.load(out.toByteArray());
+		out.reset();
+		out.writeVarChar(s);
+		varChar.load(out.toByteArray());
+		out.reset();
+		out.writeString(s);
+		string.load(out.toByteArray());
+	}
+	
+	@Benchmark
+	public VarOutput writeUTF() throws IOException {
+		final var out = utf.output();
+		out.writeUTF(s);
+		return out;
+	}
+	
+	@Benchmark
+	public String readUTF() throws IOException {
+		return utf.input().readUTF();
+	}
+	
+	@Benchmark
+	public VarOutput writeVarChar() throws IOException {
+		final var out = varChar.output();
+		out.writeVarChar(s);
+		return out;
+	}
+	
+	@Benchmark
+	public String readVarChar() throws IOException {
+		return varChar.input().readVarChar();
+	}
+	
+	@Benchmark
+	public VarOutput writeString() throws IOException {
+		final var out = string.output();
+		out.writeString(s);
+		return out;
+	}
+	
+	@Benchmark
+	public String readString() throws IOException {
+		return string.input().readString();
+	}
+}
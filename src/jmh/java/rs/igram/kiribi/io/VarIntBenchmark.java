@@ -0,0 +1,98 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks writing and reading VarInts of each size class, in both the CompactSize
+ * and LEB128 formats.
+ *
+ * @author Michael Sargent
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VarIntBenchmark {
+	// CompactSize encoded size in bytes
+	@Param({"1", "3", "5", "9"})
+	int size;
+	
+	@Param({Codec.STREAM, Codec.BUFFER, Codec.DIRECT})
+	String codec;
+	
+	private Codec c;
+	private Codec c128;
+	private long value;
+	
+	@Setup
+	public void setup() throws IOException {
+		switch(size){
+		case 1: value = 0x7Fl; break;
+		case 3: value = 0xABCDl; break;
+		case 5: value = 0xABCDEF01l; break;
+		default: value = 0x0123456789ABCDEFl;
+		}
+		c = Codec.of(codec, 16);
+		var out = new ByteArrayVarOutput();
+		out.writeVarInt(value);
+		c.load(out.toByteArray());
+		
+		c128 = Codec.of(codec, 16);
+		out.reset();
+		out.writeVarLong128(value);
+		c128.load(out.toByteArray());
+	}
+	
+	@Benchmark
+	public VarOutput writeVarInt() throws IOException {
+		final var out = c.output();
+		out.writeVarInt(value);
+		return out;
+	}
+	
+	@Benchmark
+	public long readVarLong() throws IOException {
+		return c.input().readVarLong();
+	}
+	
+	@Benchmark
+	public VarOutput writeVarLong128() throws IOException {
+		final var out = c128.output();
+		out.writeVarLong128(value);
+		return out;
+	}
+	
+	@Benchmark
+	public long readVarLong128() throws IOException {
+		return c128.input().readVarLong128();
+	}
+}
@@ -31,5 +31,7 @@
  */
 module rs.igram.kiribi.io {
 	requires java.base;
+	requires static java.management;
+	requires static jdk.jfr;
 	exports rs.igram.kiribi.io;
 }
\ No newline at end of file
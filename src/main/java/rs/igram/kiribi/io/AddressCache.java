@@ -0,0 +1,136 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * A bounded cache of canonical <code>InetSocketAddress</code> instances keyed on 
+ * their encoded form, as written by <code>VarOutput.writeSocketAddress()</code>.
+ *
+ * <p>The cache is direct mapped: each address may only occupy one slot, replacing
+ * whichever address was there before. Lookups and replacements are lock free and
+ * the cache may be shared between threads.</p>
+ *
+ * <pre>
+ * AddressCache cache = new AddressCache(4096);
+ * ...
+ * InetSocketAddress peer = in.readSocketAddress(cache);
+ * </pre>
+ *
+ * @see VarInput#readSocketAddress(AddressCache)
+ * @author Michael Sargent
+ */
+public final class AddressCache {
+	// last 8 bytes of an IPv4-mapped address less the IPv4 address, the first 8 are 0
+	static final long IPV4_MAPPED = 0xFFFFL << 32;
+	
+	private final Entry[] entries;
+	private final int mask;
+	
+	/**
+	 * Initializes a newly created <code>AddressCache</code> object.
+	 *
+	 * @param capacity The number of addresses which may be cached, rounded up to 
+	 * a power of two.
+	 */
+	public AddressCache(int capacity) {
+		if(capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("Invalid capacity: "+capacity);
+		final var n = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		entries = new Entry[n];
+		mask = n - 1;
+	}
+	
+	/**
+	 * Returns the number of addresses which may be cached.
+	 *
+	 * @return The number of addresses which may be cached.
+	 */
+	public int capacity() {
+		return entries.length;
+	}
+	
+	/**
+	 * Returns the canonical address for the encoded form of an address.
+	 *
+	 * @param hi The first 8 bytes of the IPv6 or IPv4-mapped address, big endian.
+	 * @param lo The last 8 bytes of the IPv6 or IPv4-mapped address, big endian.
+	 * @param port The port.
+	 * @return The canonical address.
+	 * @throws IOException if the encoded form is not a valid address.
+	 */
+	public InetSocketAddress get(long hi, long lo, int port) throws IOException {
+		final var i = slot(hi, lo, port);
+		final var e = entries[i];
+		if(e != null && e.lo == lo && e.hi == hi && e.port == port) return e.address;
+		final var address = decode(hi, lo, port);
+		entries[i] = new Entry(hi, lo, port, address);
+		return address;
+	}
+	
+	/**
+	 * Removes all addresses from the cache.
+	 */
+	public void clear() {
+		for(int i = 0; i < entries.length; i++) entries[i] = null;
+	}
+	
+	private int slot(long hi, long lo, int port) {
+		var h = hi * 0x9E3779B97F4A7C15L + lo;
+		h = (h ^ (h >>> 29)) * 0xBF58476D1CE4E5B9L + port;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+	
+	// decodes the encoded form of an address
+	static InetSocketAddress decode(long hi, long lo, int port) throws IOException {
+		if(hi == 0 && lo == 0) throw new IOException("Invalid address: null");
+		final byte[] b;
+		if(hi == 0 && (lo & 0xFFFFFFFF00000000L) == IPV4_MAPPED){
+			b = new byte[4];
+			ByteUtils.put(b, 0, (int)lo);
+		}else{
+			b = new byte[16];
+			ByteUtils.put(b, 0, hi);
+			ByteUtils.put(b, 8, lo);
+		}
+		return new InetSocketAddress(InetAddress.getByAddress(b), port);
+	}
+	
+	private static final class Entry {
+		final long hi;
+		final long lo;
+		final int port;
+		final InetSocketAddress address;
+		
+		Entry(long hi, long lo, int port, InetSocketAddress address) {
+			this.hi = hi;
+			this.lo = lo;
+			this.port = port;
+			this.address = address;
+		}
+	}
+}
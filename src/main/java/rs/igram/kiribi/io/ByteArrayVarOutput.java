@@ -0,0 +1,173 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Concrete implementation of VarOutput which writes to a growable byte array.
+ *
+ * <p>Unlike <code>VarOutputStream</code> this class is unsynchronized and may be
+ * reset and reused. Instances obtained from {@link #acquire()} are recycled per 
+ * thread and must be released, typically as follows:
+ *
+ * <pre>
+ * try(var out = ByteArrayVarOutput.acquire()){
+ *     foo.write(out);
+ *     return out.toByteArray();
+ * }
+ * </pre>
+ *
+ * <p>Pooled instances must be released by the thread which acquired them and must 
+ * not be used after they have been released.</p>
+ *
+ * @author Michael Sargent
+ */
+public class ByteArrayVarOutput extends ByteBufferVarOutput implements AutoCloseable {
+	// initial capacity of new instances
+	private static final int DEFAULT_CAPACITY = 256;
+	// pooled instances which have grown beyond this are discarded on release
+	private static final int MAX_POOLED_CAPACITY = 1 << 16;
+	private static final ThreadLocal<ByteArrayVarOutput> POOL = 
+		ThreadLocal.withInitial(() -> new ByteArrayVarOutput(DEFAULT_CAPACITY, true));
+	
+	private final boolean pooled;
+	private boolean acquired;
+	
+	/**
+	 * Initializes a newly created <code>ByteArrayVarOutput</code> object
+	 * with a default initial capacity.
+	 */
+	public ByteArrayVarOutput() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Initializes a newly created <code>ByteArrayVarOutput</code> object
+	 * with the provided initial capacity.
+	 *
+	 * @param capacity The initial capacity.
+	 */
+	public ByteArrayVarOutput(int capacity) {
+		this(capacity, false);
+	}
+	
+	private ByteArrayVarOutput(int capacity, boolean pooled) {
+		super(new byte[capacity]);
+		this.pooled = pooled;
+	}
+	
+	/**
+	 * Returns an empty <code>ByteArrayVarOutput</code> from the calling thread's pool.
+	 * <p>If the pooled instance is already in use, for example when encoding nested 
+	 * objects, a new unpooled instance is returned instead.</p>
+	 *
+	 * @return An empty <code>ByteArrayVarOutput</code>.
+	 * @see #release
+	 */
+	public static ByteArrayVarOutput acquire() {
+		final var out = POOL.get();
+		if(out.acquired) return new ByteArrayVarOutput();
+		out.acquired = true;
+		return out;
+	}
+	
+	/**
+	 * Resets this instance and returns it to the calling thread's pool if it was 
+	 * obtained from {@link #acquire()}.
+	 *
+	 * @see #acquire
+	 */
+	public void release() {
+		if(pooled && buf.capacity() > MAX_POOLED_CAPACITY) buf = ByteBuffer.allocate(DEFAULT_CAPACITY);
+		reset();
+		acquired = false;
+	}
+	
+	/**
+	 * Equivalent to {@link #release()}.
+	 */
+	@Override
+	public void close() {
+		release();
+	}
+	
+	/**
+	 * Discards all bytes written so that the underlying array may be reused.
+	 */
+	public void reset() {
+		buf.clear();
+	}
+	
+	/**
+	 * Returns the number of bytes written.
+	 *
+	 * @return The number of bytes written.
+	 */
+	public int size() {
+		return buf.position();
+	}
+	
+	/**
+	 * Returns the underlying array. Only the first {@link #size()} bytes are valid
+	 * and the array may be replaced by subsequent writes.
+	 *
+	 * @return The underlying array.
+	 */
+	public byte[] array() {
+		return buf.array();
+	}
+	
+	/**
+	 * Returns a copy of the bytes written.
+	 *
+	 * @return A copy of the bytes written.
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buf.array(), buf.position());
+	}
+	
+	/**
+	 * Returns a buffer sharing the bytes written without copying them. The returned
+	 * buffer is only valid until this instance is next written to, reset or released.
+	 *
+	 * @return A buffer sharing the bytes written.
+	 */
+	public ByteBuffer slice() {
+		return ByteBuffer.wrap(buf.array(), 0, buf.position()).slice();
+	}
+	
+	@Override
+	void ensure(int n) throws IOException {
+		if(buf.remaining() >= n) return;
+		final var p = buf.position();
+		final var required = (long)p + n;
+		if(required > Integer.MAX_VALUE - 8) throw new IOException("Required capacity too large: "+required);
+		final var capacity = (int)Math.min(Integer.MAX_VALUE - 8, Math.max(2L * buf.capacity(), required));
+		buf = ByteBuffer.wrap(Arrays.copyOf(buf.array(), capacity)).order(buf.order()).position(p);
+	}
+}
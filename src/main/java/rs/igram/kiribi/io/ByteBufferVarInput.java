@@ -0,0 +1,397 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Concrete implementation of VarInput which reads directly from a <code>ByteBuffer</code>.
+ *
+ * <p>Multi-byte values are read with a single positioned access on the underlying
+ * buffer, which may be either a heap or a direct buffer. Reading starts at the 
+ * buffer's current position and advances it, so the buffer remains usable by its 
+ * owner. The byte order of the buffer is honoured but never modified.</p>
+ *
+ * @author Michael Sargent
+ */
+public class ByteBufferVarInput implements VarInput {
+	final ByteBuffer buf;
+	// false when the buffer will be reused so views must not be handed out
+	private final boolean views;
+	
+	/**
+	 * Initializes a newly created <code>ByteBufferVarInput</code> object
+	 * so that it reads from the provided <code>ByteBuffer</code>.
+	 *
+	 * @param buf The buffer to read from.
+	 */
+	public ByteBufferVarInput(ByteBuffer buf) {
+		this(buf, true);
+	}
+	
+	ByteBufferVarInput(ByteBuffer buf, boolean views) {
+		this.buf = buf;
+		this.views = views;
+	}
+	
+	/**
+	 * Initializes a newly created <code>ByteBufferVarInput</code> object
+	 * so that it reads from the provided byte array.
+	 *
+	 * @param b The byte array to read from.
+	 */
+	public ByteBufferVarInput(byte[] b) {
+		this(ByteBuffer.wrap(b));
+	}
+	
+	/**
+	 * Initializes a newly created <code>ByteBufferVarInput</code> object
+	 * so that it reads from a region of the provided byte array.
+	 *
+	 * @param b The byte array to read from.
+	 * @param offset The offset of the first byte to read.
+	 * @param length The number of bytes which may be read.
+	 */
+	public ByteBufferVarInput(byte[] b, int offset, int length) {
+		this(ByteBuffer.wrap(b, offset, length));
+	}
+	
+	/**
+	 * Returns the underlying buffer.
+	 *
+	 * @return The underlying buffer.
+	 */
+	public ByteBuffer buffer() {
+		return buf;
+	}
+	
+	/**
+	 * Returns the number of bytes remaining to be read.
+	 *
+	 * @return The number of bytes remaining to be read.
+	 */
+	public int remaining() {
+		return buf.remaining();
+	}
+	
+	// returns the current position and advances it by n bytes
+	private int advance(int n) throws EOFException {
+		final var p = buf.position();
+		if(buf.limit() - p < n) throw new EOFException();
+		buf.position(p + n);
+		return p;
+	}
+	
+	private boolean bigEndian() {
+		return buf.order() == ByteOrder.BIG_ENDIAN;
+	}
+	
+	private short int16(boolean be) throws EOFException {
+		final var v = buf.getShort(advance(2));
+		return be == bigEndian() ? v : Short.reverseBytes(v);
+	}
+	
+	private int int32(boolean be) throws EOFException {
+		final var v = buf.getInt(advance(4));
+		return be == bigEndian() ? v : Integer.reverseBytes(v);
+	}
+	
+	private long int64(boolean be) throws EOFException {
+		final var v = buf.getLong(advance(8));
+		return be == bigEndian() ? v : Long.reverseBytes(v);
+	}
+	
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		if(buf.remaining() < len) throw new EOFException();
+		buf.get(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		final var k = Math.max(0, Math.min(n, buf.remaining()));
+		buf.position(buf.position() + k);
+		return k;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		if(!buf.hasRemaining()) throw new EOFException();
+		return buf.get();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return int16(true);
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return int16(true) & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char)int16(true);
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return int32(true);
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return int64(true);
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(int32(true));
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(int64(true));
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		if(!buf.hasRemaining()) return null;
+		final var line = new StringBuilder();
+		while(buf.hasRemaining()){
+			final var c = (char)(buf.get() & 0xFF);
+			if(c == '\n') break;
+			if(c == '\r'){
+				if(buf.hasRemaining() && buf.get(buf.position()) == '\n') buf.get();
+				break;
+			}
+			line.append(c);
+		}
+		return line.toString();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		final var p = buf.position();
+		final var L = readUnsignedShort();
+		if(buf.hasArray() && buf.remaining() >= L){
+			// ascii strings are decoded straight from the array
+			final var a = buf.array();
+			final var off = buf.arrayOffset() + buf.position();
+			var i = 0;
+			while(i < L && a[off + i] > 0) i++;
+			if(i == L){
+				buf.position(buf.position() + L);
+				return new String(a, off, L, StandardCharsets.ISO_8859_1);
+			}
+		}
+		buf.position(p);
+		return DataInputStream.readUTF(this);
+	}
+
+	@Override
+	public String readVarChar() throws IOException {
+		return string(StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public String readString() throws IOException {
+		return string(StandardCharsets.UTF_8);
+	}
+	
+	// reads a VarInt length prefixed string without an intermediate copy where possible
+	private String string(Charset charset) throws IOException {
+		final var L = readVarLong();
+		if(L < 0 || L > Integer.MAX_VALUE) throw new IOException("Invalid length: "+L);
+		final var p = advance((int)L);
+		if(buf.hasArray()) return new String(buf.array(), buf.arrayOffset() + p, (int)L, charset);
+		final var b = new byte[(int)L];
+		buf.duplicate().position(p).get(b);
+		return new String(b, charset);
+	}
+	
+	@Override
+	public byte[] readBytes() throws IOException {
+		final var L = readInt();
+		if(L < 0) throw new IOException("Invalid length: "+L);
+		final var b = new byte[L];
+		readFully(b);
+		return b;
+	}
+
+	@Override
+	public long readVarLong128() throws IOException {
+		var p = buf.position();
+		// fall back to bounds checked reads near the end of the buffer
+		if(buf.limit() - p < 10) return VarInput.super.readVarLong128();
+		var v = 0L;
+		for(int shift = 0; shift < 64; shift += 7){
+			final var b = buf.get(p++);
+			v |= (b & 0x7FL) << shift;
+			if(b >= 0){
+				buf.position(p);
+				return v;
+			}
+		}
+		throw new IOException("Malformed VarLong128");
+	}
+
+	@Override
+	public ByteBuffer readBytesView() throws IOException {
+		if(!views) return VarInput.super.readBytesView();
+		final var L = readInt();
+		if(L < 0) throw new IOException("Invalid length: "+L);
+		final var p = advance(L);
+		final var view = buf.asReadOnlyBuffer();
+		view.position(p).limit(p + L);
+		return view.slice();
+	}
+
+	@Override
+	public long readULong16() throws IOException {
+		return int16(false) & 0xFFFFL;
+	}
+
+	@Override
+	public long readULong32() throws IOException {
+		return int32(false) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public long readULong64() throws IOException {
+		return int64(false);
+	}
+
+	@Override
+	public int readUInt16BE() throws IOException {
+		return int16(true) & 0xFFFF;
+	}
+
+	@Override
+	public long readULong32BE() throws IOException {
+		return int32(true) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public long readULong64BE() throws IOException {
+		return int64(true);
+	}
+
+	@Override
+	public long[] readLongArray() throws IOException {
+		final var a = new long[count(Long.BYTES)];
+		bulk(a.length * Long.BYTES).asLongBuffer().get(a);
+		return a;
+	}
+
+	@Override
+	public int readLongs(long[] dst) throws IOException {
+		final var L = count(Long.BYTES);
+		if(L > dst.length) throw new IOException("Array too small: "+L+" > "+dst.length);
+		bulk(L * Long.BYTES).asLongBuffer().get(dst, 0, L);
+		return L;
+	}
+
+	@Override
+	public int[] readIntArray() throws IOException {
+		final var a = new int[count(Integer.BYTES)];
+		bulk(a.length * Integer.BYTES).asIntBuffer().get(a);
+		return a;
+	}
+
+	@Override
+	public int readInts(int[] dst) throws IOException {
+		final var L = count(Integer.BYTES);
+		if(L > dst.length) throw new IOException("Array too small: "+L+" > "+dst.length);
+		bulk(L * Integer.BYTES).asIntBuffer().get(dst, 0, L);
+		return L;
+	}
+
+	@Override
+	public short[] readShortArray() throws IOException {
+		final var a = new short[count(Short.BYTES)];
+		bulk(a.length * Short.BYTES).asShortBuffer().get(a);
+		return a;
+	}
+
+	@Override
+	public int readShorts(short[] dst) throws IOException {
+		final var L = count(Short.BYTES);
+		if(L > dst.length) throw new IOException("Array too small: "+L+" > "+dst.length);
+		bulk(L * Short.BYTES).asShortBuffer().get(dst, 0, L);
+		return L;
+	}
+
+	@Override
+	public double[] readDoubleArray() throws IOException {
+		final var a = new double[count(Double.BYTES)];
+		bulk(a.length * Double.BYTES).asDoubleBuffer().get(a);
+		return a;
+	}
+
+	@Override
+	public int readDoubles(double[] dst) throws IOException {
+		final var L = count(Double.BYTES);
+		if(L > dst.length) throw new IOException("Array too small: "+L+" > "+dst.length);
+		bulk(L * Double.BYTES).asDoubleBuffer().get(dst, 0, L);
+		return L;
+	}
+
+	// reads a VarInt array length, checking the elements are available before allocation
+	private int count(int width) throws IOException {
+		final var L = readVarLong();
+		if(L < 0 || L > Integer.MAX_VALUE) throw new IOException("Invalid length: "+L);
+		if(L > buf.remaining() / width) throw new EOFException();
+		return (int)L;
+	}
+	
+	// returns a big endian view of the next len bytes and advances past them
+	private ByteBuffer bulk(int len) throws EOFException {
+		final var p = advance(len);
+		return buf.duplicate().order(ByteOrder.BIG_ENDIAN).position(p);
+	}
+}
@@ -0,0 +1,360 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Concrete implementation of VarOutput which writes directly to a <code>ByteBuffer</code>.
+ *
+ * <p>Multi-byte values are written with a single positioned access on the underlying
+ * buffer, which may be either a heap or a direct buffer. Writing starts at the 
+ * buffer's current position and advances it. The byte order of the buffer is 
+ * honoured but never modified.</p>
+ *
+ * @author Michael Sargent
+ */
+public class ByteBufferVarOutput implements VarOutput {
+	ByteBuffer buf;
+	// strings are encoded here before being copied to direct buffers
+	private byte[] scratch;
+	
+	/**
+	 * Initializes a newly created <code>ByteBufferVarOutput</code> object
+	 * so that it writes to the provided <code>ByteBuffer</code>.
+	 *
+	 * @param buf The buffer to write to.
+	 */
+	public ByteBufferVarOutput(ByteBuffer buf) {
+		this.buf = buf;
+	}
+	
+	/**
+	 * Initializes a newly created <code>ByteBufferVarOutput</code> object
+	 * so that it writes to the provided byte array.
+	 *
+	 * @param b The byte array to write to.
+	 */
+	public ByteBufferVarOutput(byte[] b) {
+		this(ByteBuffer.wrap(b));
+	}
+	
+	/**
+	 * Returns the underlying buffer.
+	 *
+	 * @return The underlying buffer.
+	 */
+	public ByteBuffer buffer() {
+		return buf;
+	}
+	
+	/**
+	 * Returns the number of bytes which may still be written.
+	 *
+	 * @return The number of bytes which may still be written.
+	 */
+	public int remaining() {
+		return buf.remaining();
+	}
+	
+	/**
+	 * Ensures that at least <code>n</code> more bytes may be written.
+	 *
+	 * @param n The number of bytes to be written.
+	 * @throws IOException if there is insufficient space in the buffer.
+	 */
+	void ensure(int n) throws IOException {
+		if(buf.remaining() < n) throw new IOException("Insufficient space in buffer: "+n+" > "+buf.remaining());
+	}
+	
+	// returns the current position and advances it by n bytes
+	private int advance(int n) throws IOException {
+		ensure(n);
+		final var p = buf.position();
+		buf.position(p + n);
+		return p;
+	}
+	
+	private boolean bigEndian() {
+		return buf.order() == ByteOrder.BIG_ENDIAN;
+	}
+	
+	private void int16(short v, boolean be) throws IOException {
+		final var p = advance(2);
+		buf.putShort(p, be == bigEndian() ? v : Short.reverseBytes(v));
+	}
+	
+	private void int32(int v, boolean be) throws IOException {
+		final var p = advance(4);
+		buf.putInt(p, be == bigEndian() ? v : Integer.reverseBytes(v));
+	}
+	
+	private void int64(long v, boolean be) throws IOException {
+		final var p = advance(8);
+		buf.putLong(p, be == bigEndian() ? v : Long.reverseBytes(v));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensure(1);
+		buf.put((byte)b);
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensure(len);
+		buf.put(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		write(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v) throws IOException {
+		write(v);
+	}
+
+	@Override
+	public void writeShort(int v) throws IOException {
+		int16((short)v, true);
+	}
+
+	@Override
+	public void writeChar(int v) throws IOException {
+		int16((short)v, true);
+	}
+
+	@Override
+	public void writeInt(int v) throws IOException {
+		int32(v, true);
+	}
+
+	@Override
+	public void writeLong(long v) throws IOException {
+		int64(v, true);
+	}
+
+	@Override
+	public void writeFloat(float v) throws IOException {
+		int32(Float.floatToIntBits(v), true);
+	}
+
+	@Override
+	public void writeDouble(double v) throws IOException {
+		int64(Double.doubleToLongBits(v), true);
+	}
+
+	@Override
+	public void writeBytes(String s) throws IOException {
+		final var L = s.length();
+		ensure(L);
+		for(int i = 0; i < L; i++) buf.put((byte)s.charAt(i));
+	}
+
+	@Override
+	public void writeChars(String s) throws IOException {
+		final var L = s.length();
+		ensure(2 * L);
+		for(int i = 0; i < L; i++) int16((short)s.charAt(i), true);
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		// modified UTF-8 as per DataOutput
+		final var L = s.length();
+		final var utflen = utfLength(s);
+		ensure(2 + utflen);
+		int16((short)utflen, true);
+		for(int i = 0; i < L; i++){
+			final var c = s.charAt(i);
+			if(c < 0x80 && c != 0){
+				buf.put((byte)c);
+			}else if(c >= 0x800){
+				buf.put((byte)(0xE0 | ((c >> 12) & 0x0F)));
+				buf.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+				buf.put((byte)(0x80 | (c & 0x3F)));
+			}else{
+				buf.put((byte)(0xC0 | ((c >> 6) & 0x1F)));
+				buf.put((byte)(0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	@Override
+	public void writeVarChar(String s) throws IOException {
+		final var L = s.length();
+		ensure(ByteUtils.varIntSize(L) + L);
+		final var p = buf.position();
+		writeVarInt(L);
+		try{
+			if(buf.hasArray()){
+				ByteUtils.encodeLatin1(s, buf.array(), buf.arrayOffset() + buf.position());
+				buf.position(buf.position() + L);
+			}else{
+				final var b = scratch(L);
+				ByteUtils.encodeLatin1(s, b, 0);
+				buf.put(b, 0, L);
+			}
+		}catch(IOException e){
+			// don't leave the length behind
+			buf.position(p);
+			throw e;
+		}
+	}
+
+	@Override
+	public void writeString(String s) throws IOException {
+		final var L = ByteUtils.utf8Length(s);
+		ensure(ByteUtils.varIntSize(L) + L);
+		writeVarInt(L);
+		if(buf.hasArray()){
+			ByteUtils.encodeUTF8(s, buf.array(), buf.arrayOffset() + buf.position());
+			buf.position(buf.position() + L);
+		}else{
+			final var b = scratch(L);
+			ByteUtils.encodeUTF8(s, b, 0);
+			buf.put(b, 0, L);
+		}
+	}
+	
+	private byte[] scratch(int n) {
+		if(scratch == null || scratch.length < n) scratch = new byte[Math.max(n, 64)];
+		return scratch;
+	}
+
+	// returns the length of the modified UTF-8 encoding of a string as per DataOutput
+	static int utfLength(String s) throws UTFDataFormatException {
+		final var L = s.length();
+		var utflen = L;
+		for(int i = 0; i < L; i++){
+			final var c = s.charAt(i);
+			if(c >= 0x80 || c == 0) utflen += (c >= 0x800) ? 2 : 1;
+		}
+		if(utflen > 0xFFFF) throw new UTFDataFormatException("Encoded string too long: "+utflen+" bytes");
+		return utflen;
+	}
+
+	@Override
+	public void writeBytes(byte[] b) throws IOException {
+		ensure(4 + b.length);
+		int32(b.length, true);
+		buf.put(b);
+	}
+
+	@Override
+	public void writeBytes(ByteBuffer b) throws IOException {
+		ensure(4 + b.remaining());
+		int32(b.remaining(), true);
+		buf.put(b.duplicate());
+	}
+
+	@Override
+	public void writeVarLong128(long v) throws IOException {
+		ensure(ByteUtils.var128Size(v));
+		while((v & ~0x7FL) != 0){
+			buf.put((byte)((v & 0x7FL) | 0x80L));
+			v >>>= 7;
+		}
+		buf.put((byte)v);
+	}
+
+	@Override
+	public void writeUInt16(long v) throws IOException {
+		int16((short)v, false);
+	}
+
+	@Override
+	public void writeUInt32(long v) throws IOException {
+		int32((int)v, false);
+	}
+
+	@Override
+	public void writeUInt64(long v) throws IOException {
+		int64(v, false);
+	}
+
+	@Override
+	public void writeUInt16BE(long v) throws IOException {
+		int16((short)v, true);
+	}
+
+	@Override
+	public void writeUInt32BE(long v) throws IOException {
+		int32((int)v, true);
+	}
+
+	@Override
+	public void writeUInt64BE(long v) throws IOException {
+		int64(v, true);
+	}
+
+	@Override
+	public void writeLongs(long[] a) throws IOException {
+		final var L = Math.multiplyExact(a.length, Long.BYTES);
+		ensure(ByteUtils.varIntSize(a.length) + L);
+		writeVarInt(a.length);
+		bulk(L).asLongBuffer().put(a);
+	}
+
+	@Override
+	public void writeInts(int[] a) throws IOException {
+		final var L = Math.multiplyExact(a.length, Integer.BYTES);
+		ensure(ByteUtils.varIntSize(a.length) + L);
+		writeVarInt(a.length);
+		bulk(L).asIntBuffer().put(a);
+	}
+
+	@Override
+	public void writeShorts(short[] a) throws IOException {
+		final var L = Math.multiplyExact(a.length, Short.BYTES);
+		ensure(ByteUtils.varIntSize(a.length) + L);
+		writeVarInt(a.length);
+		bulk(L).asShortBuffer().put(a);
+	}
+
+	@Override
+	public void writeDoubles(double[] a) throws IOException {
+		final var L = Math.multiplyExact(a.length, Double.BYTES);
+		ensure(ByteUtils.varIntSize(a.length) + L);
+		writeVarInt(a.length);
+		bulk(L).asDoubleBuffer().put(a);
+	}
+
+	// returns a big endian view of the next len bytes and advances past them
+	private ByteBuffer bulk(int len) throws IOException {
+		final var p = advance(len);
+		return buf.duplicate().order(ByteOrder.BIG_ENDIAN).position(p);
+	}
+}
@@ -24,7 +24,13 @@
  
 package rs.igram.kiribi.io;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Collection;
+import java.util.zip.CRC32C;
 
 /**
  * Interface supporting reading and writing of byte arrays.
@@ -40,6 +46,17 @@ public interface ByteStream {
 	 */	
 	void write(byte[] b) throws IOException;
 
+	/**
+	 * Writes the encoded form of an <code>Encodable</code> object to the stream
+	 * as a single byte array.
+	 *
+	 * @param e The encodable object to be written.
+	 * @throws IOException if there was a problem writing the object.
+	 */	
+	default void write(Encodable e) throws IOException {
+		write(e.encode());
+	}
+
 	/**
 	 * Reads a byte array from the stream.
 	 *
@@ -48,6 +65,39 @@ public interface ByteStream {
 	 */
 	byte[] read() throws IOException;
 
+	/**
+	 * Starts batching writes: frames written after this call may be held back and
+	 * sent together rather than flushed one at a time, until <code>uncork()</code> is
+	 * called. Calls may be nested, in which case frames are held back until the
+	 * outermost <code>uncork()</code>.
+	 * <p>
+	 * The default implementation does nothing.
+	 *
+	 * @see #uncork
+	 */	
+	default void cork() {}
+
+	/**
+	 * Ends batching started by <code>cork()</code>, flushing any frames held back
+	 * when the outermost batch ends. Calls without a matching <code>cork()</code>
+	 * are ignored.
+	 * <p>
+	 * The default implementation does nothing.
+	 *
+	 * @throws IOException if there was a problem writing held back frames.
+	 * @see #cork
+	 */	
+	default void uncork() throws IOException {}
+
+	/**
+	 * Sends any frames held back, whether or not the stream is corked.
+	 * <p>
+	 * The default implementation does nothing.
+	 *
+	 * @throws IOException if there was a problem writing held back frames.
+	 */	
+	default void flush() throws IOException {}
+
 	/**
 	 * Creates a new <code>ByteStream</code> instance from the provided
 	 * <code>VarInputStream</code> and <code>VarOutputStream</code>.
@@ -60,28 +110,356 @@ public interface ByteStream {
 	 * @see VarOutputStream
 	 */	
 	static ByteStream stream(VarInputStream in, VarOutputStream out) {
-		return new IOStream(in, out);
+		return new IOStream(in, out, IOStream.DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	/**
+	 * Creates a new <code>ByteStream</code> instance from the provided
+	 * <code>VarInputStream</code> and <code>VarOutputStream</code>.
+	 * <p>
+	 * While corked, frames are accumulated and written to the underlying stream
+	 * once they reach <code>flushThreshold</code> bytes, so bursts of small frames
+	 * become a few large writes. Frames at least as long as the threshold are 
+	 * written straight through.
+	 *
+	 * @param in The VarInputStream to read from.
+	 * @param out The VarOutputStream to write to.
+	 * @param flushThreshold The number of bytes held back before they are written.
+	 * @return A new ByteStream instance.
+	 *
+	 * @see #cork
+	 */	
+	static ByteStream stream(VarInputStream in, VarOutputStream out, int flushThreshold) {
+		if(flushThreshold < 1) throw new IllegalArgumentException("Invalid flush threshold: "+flushThreshold);
+		return new IOStream(in, out, flushThreshold);
+	}
+
+	/**
+	 * Creates a new <code>ByteStream</code> instance from the provided
+	 * <code>VarInputStream</code> and <code>VarOutputStream</code> whose frames are
+	 * followed by a CRC32C checksum of their contents.
+	 * <p>
+	 * The checksum of an <code>Encodable</code> is computed as it is encoded, and 
+	 * that of a frame read once the whole frame has been read. Frames longer than 
+	 * <code>maxFrameLength</code> are rejected before anything is allocated for them,
+	 * so a corrupted length cannot cause a huge allocation. Both ends of a stream must
+	 * be checked streams.
+	 *
+	 * @param in The VarInputStream to read from.
+	 * @param out The VarOutputStream to write to.
+	 * @param maxFrameLength The maximum length of a frame in bytes.
+	 * @return A new ByteStream instance.
+	 * @throws IllegalArgumentException if the maximum frame length is negative.
+	 *
+	 * @see CheckedVarOutput
+	 */	
+	static ByteStream checked(VarInputStream in, VarOutputStream out, int maxFrameLength) {
+		if(maxFrameLength < 0) throw new IllegalArgumentException("Invalid max frame length: "+maxFrameLength);
+		return new IOStream(in, out, IOStream.DEFAULT_FLUSH_THRESHOLD, maxFrameLength);
+	}
+
+	/**
+	 * Creates a new <code>ByteStream</code> instance which reads and writes length
+	 * prefixed frames on the provided blocking <code>ByteChannel</code>.
+	 * <p>
+	 * The frames are compatible with those of <code>ByteStream</code>s created from
+	 * a <code>VarInputStream</code> and <code>VarOutputStream</code>. To serve many 
+	 * non-blocking channels from a single thread use a <code>FrameSelector</code>.
+	 *
+	 * @param channel The blocking channel to read from and write to.
+	 * @return A new ByteStream instance.
+	 *
+	 * @see FrameSelector
+	 */	
+	static ByteStream stream(ByteChannel channel) {
+		return new ChannelStream(channel);
+	}
+
+	/**
+	 * Creates a new <code>ByteStream</code> which deflates the frames written to the 
+	 * provided stream and inflates those read from it.
+	 * <p>
+	 * Each frame is prefixed with a flag byte. Frames shorter than 
+	 * <code>threshold</code>, or which do not shrink when deflated, are sent raw. 
+	 * Both ends of a stream must be compressed streams.
+	 *
+	 * @param stream The stream to decorate.
+	 * @param threshold The length in bytes below which frames are sent raw.
+	 * @return A new ByteStream instance.
+	 *
+	 * @see #compressed(ByteStream, int, byte[])
+	 */	
+	static ByteStream compressed(ByteStream stream, int threshold) {
+		return compressed(stream, threshold, null);
+	}
+
+	/**
+	 * Creates a new <code>ByteStream</code> which deflates the frames written to the 
+	 * provided stream with a preset dictionary, and inflates those read from it.
+	 * <p>
+	 * A dictionary holding byte sequences common to typical frames, such as one built 
+	 * with {@link #dictionary}, greatly improves the compression of small frames. Both 
+	 * ends of a stream must use the same dictionary, and frames deflated with a different
+	 * one are rejected. Inflated frames are limited to
+	 * {@link FrameSelector#DEFAULT_MAX_FRAME_LENGTH} bytes.
+	 *
+	 * @param stream The stream to decorate.
+	 * @param threshold The length in bytes below which frames are sent raw.
+	 * @param dictionary The preset dictionary, or <code>null</code> for none.
+	 * @return A new ByteStream instance.
+	 * @throws IllegalArgumentException if the threshold is negative or the dictionary
+	 * is longer than 32 KB.
+	 */	
+	static ByteStream compressed(ByteStream stream, int threshold, byte[] dictionary) {
+		if(threshold < 0) throw new IllegalArgumentException("Invalid threshold: "+threshold);
+		if(dictionary != null && dictionary.length > CompressedStream.MAX_DICTIONARY)
+			throw new IllegalArgumentException("Dictionary too long: "+dictionary.length);
+		return new CompressedStream(stream, threshold, dictionary == null ? null : dictionary.clone(),
+			FrameSelector.DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	/**
+	 * Builds a preset dictionary for a compressed stream from sample frames.
+	 * <p>
+	 * The samples are concatenated and the last <code>size</code> bytes, capped to the
+	 * 32 KB deflate window, are kept. Deflate favours matches near the end of the 
+	 * dictionary, so the most representative samples should be last.
+	 *
+	 * @param samples Sample frames typical of those to be compressed.
+	 * @param size The maximum size of the dictionary.
+	 * @return The dictionary.
+	 *
+	 * @see #compressed(ByteStream, int, byte[])
+	 */	
+	static byte[] dictionary(Collection<byte[]> samples, int size) {
+		var total = 0L;
+		for(var s : samples) total += s.length;
+		final var d = new byte[(int)Math.min(total, Math.min(size, CompressedStream.MAX_DICTIONARY))];
+		var skip = total - d.length;
+		var p = 0;
+		for(var s : samples){
+			if(skip >= s.length){
+				skip -= s.length;
+				continue;
+			}
+			System.arraycopy(s, (int)skip, d, p, s.length - (int)skip);
+			p += s.length - (int)skip;
+			skip = 0;
+		}
+		return d;
 	}
 }
 		
 // Concrete implementation of ByteStream
 class IOStream implements ByteStream {
+	static final int DEFAULT_FLUSH_THRESHOLD = 8 * 1024;
+	
 	VarInputStream in;
 	VarOutputStream out;
+	// frames are assembled here so each reaches the stream in a single write
+	ByteArrayVarOutput batch;
+	final int flushThreshold;
+	int corked;
+	// frames carry a CRC32C trailer
+	final boolean checked;
+	final int maxFrameLength;
 		
-	IOStream(VarInputStream in, VarOutputStream out) {
+	IOStream(VarInputStream in, VarOutputStream out, int flushThreshold) {
+		this(in, out, flushThreshold, false, Integer.MAX_VALUE);
+	}
+		
+	IOStream(VarInputStream in, VarOutputStream out, int flushThreshold, int maxFrameLength) {
+		this(in, out, flushThreshold, true, maxFrameLength);
+	}
+		
+	private IOStream(VarInputStream in, VarOutputStream out, int flushThreshold, boolean checked, int maxFrameLength) {
 		this.in = in;
 		this.out = out;
+		this.flushThreshold = flushThreshold;
+		batch = new ByteArrayVarOutput(capacity());
+		this.checked = checked;
+		this.maxFrameLength = maxFrameLength;
 	}
 		
 	@Override
 	public void write(byte[] b) throws IOException {
-		out.writeBytes(b);
-		out.flush();
+		final var event = CodecEvents.begin(CodecEvents.STREAM_WRITE);
+		frame(b);
+		CodecEvents.commit(event, getClass(), b.length);
+	}
+	
+	private void frame(byte[] b) throws IOException {
+		if(b.length > maxFrameLength) throw new IOException("Frame too long: "+b.length);
+		batch.writeInt(b.length);
+		if(b.length < flushThreshold){
+			batch.write(b);
+			if(checked) batch.writeInt(checksum(b));
+			if(corked == 0 || batch.size() >= flushThreshold) drain();
+		}else{
+			// too big to be worth copying
+			drain(b);
+		}
+		if(out.metrics != null) out.metrics.framesWritten.increment();
+	}
+
+	@Override
+	public void write(Encodable e) throws IOException {
+		final var event = CodecEvents.begin(CodecEvents.STREAM_WRITE);
+		final var L = frame(e);
+		CodecEvents.commit(event, getClass(), L);
+	}
+	
+	// returns the length of the frame
+	private int frame(Encodable e) throws IOException {
+		// encoded straight into the batch, the length is filled in afterwards
+		final var mark = batch.size();
+		final int L;
+		try{
+			batch.writeInt(0);
+			if(!checked){
+				e.write(batch);
+				L = batch.size() - mark - 4;
+			}else{
+				final var crc = new CheckedVarOutput(batch);
+				e.write(crc);
+				L = batch.size() - mark - 4;
+				batch.writeInt(crc.checksum());
+			}
+			if(L > maxFrameLength) throw new IOException("Frame too long: "+L);
+			ByteUtils.put(batch.array(), mark, L);
+		}catch(IOException | RuntimeException x){
+			// drop the partial frame
+			batch.buf.position(mark);
+			throw x;
+		}
+		if(corked == 0 || batch.size() >= flushThreshold) drain();
+		if(out.metrics != null){
+			out.metrics.framesWritten.increment();
+			out.metrics.encoded(e.getClass(), L);
+		}
+		return L;
+	}
+
+	@Override
+	public void cork() {
+		corked++;
+	}
+
+	@Override
+	public void uncork() throws IOException {
+		// unmatched calls are ignored, as by other streams
+		if(corked == 0) return;
+		if(--corked == 0 && batch.size() > 0) drain();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+	}
+	
+	private void drain() throws IOException {
+		drain(null);
+	}
+	
+	private void drain(byte[] b) throws IOException {
+		try{
+			out.write(batch.array(), 0, batch.size());
+			if(b != null){
+				out.write(b);
+				if(checked) out.writeInt(checksum(b));
+			}
+			out.flush();
+		}finally{
+			// don't hang on to the buffer after a large encodable
+			if(batch.array().length > 2L * flushThreshold + 8){
+				batch = new ByteArrayVarOutput(capacity());
+			}else{
+				batch.reset();
+			}
+		}
+	}
+	
+	private int capacity() {
+		return Math.min(flushThreshold, DEFAULT_FLUSH_THRESHOLD) + 4;
+	}
+
+	// not shared as frames may be read and written concurrently
+	private static int checksum(byte[] b) {
+		final var crc = new CRC32C();
+		crc.update(b);
+		return (int)crc.getValue();
+	}
+
+	@Override
+	public byte[] read() throws IOException {
+		final var event = CodecEvents.begin(CodecEvents.STREAM_READ);
+		final var b = frame();
+		CodecEvents.commit(event, getClass(), b.length);
+		return b;
+	}
+	
+	private byte[] frame() throws IOException {
+		// not read with readBytes, so frames are not counted as byte arrays
+		final var L = in.readInt();
+		if(L < 0 || L > maxFrameLength) throw new IOException("Invalid frame length: "+L);
+		final var b = new byte[L];
+		in.readFully(b);
+		if(checked && checksum(b) != in.readInt()) throw new IOException("Checksum mismatch");
+		if(in.metrics != null) in.metrics.framesRead.increment();
+		in.publish();
+		return b;
+	}
+}
+
+// Concrete implementation of ByteStream over a blocking ByteChannel
+class ChannelStream implements ByteStream {
+	private final ByteChannel channel;
+	private final ByteBuffer readHeader = ByteBuffer.allocate(4);
+	private final ByteBuffer writeHeader = ByteBuffer.allocate(4);
+	
+	ChannelStream(ByteChannel channel) {
+		this.channel = channel;
+	}
+	
+	@Override
+	public void write(byte[] b) throws IOException {
+		final var event = CodecEvents.begin(CodecEvents.STREAM_WRITE);
+		frame(b);
+		CodecEvents.commit(event, getClass(), b.length);
+	}
+	
+	private void frame(byte[] b) throws IOException {
+		writeHeader.clear().putInt(0, b.length);
+		final var payload = ByteBuffer.wrap(b);
+		if(channel instanceof GatheringByteChannel){
+			// header and payload in a single write where possible
+			final var frame = new ByteBuffer[]{writeHeader, payload};
+			final var gathering = (GatheringByteChannel)channel;
+			while(writeHeader.hasRemaining() || payload.hasRemaining()) gathering.write(frame);
+		}else{
+			while(writeHeader.hasRemaining()) channel.write(writeHeader);
+			while(payload.hasRemaining()) channel.write(payload);
+		}
 	}
 
 	@Override
 	public byte[] read() throws IOException {
-		return in.readBytes();
+		final var event = CodecEvents.begin(CodecEvents.STREAM_READ);
+		final var b = frame();
+		CodecEvents.commit(event, getClass(), b.length);
+		return b;
+	}
+	
+	private byte[] frame() throws IOException {
+		fill(readHeader.clear());
+		final var L = readHeader.getInt(0);
+		if(L < 0) throw new IOException("Invalid frame length: "+L);
+		final var b = ByteBuffer.allocate(L);
+		fill(b);
+		return b.array();
+	}
+	
+	private void fill(ByteBuffer buf) throws IOException {
+		while(buf.hasRemaining()) if(channel.read(buf) < 0) throw new EOFException();
 	}
 }
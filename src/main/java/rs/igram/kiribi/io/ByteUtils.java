@@ -26,17 +26,21 @@ package rs.igram.kiribi.io;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
-import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
 
 /**
  * This class contains various static utility functions to manipulate byte arrays.
@@ -44,6 +48,23 @@ import java.util.List;
  * @author Michael Sargent
  */
 public abstract class ByteUtils {	
+	// native order long view for the bitwise operations, where byte order is immaterial
+	private static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+	// views used by the primitive accessors
+	private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle FLOAT_BE = MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle FLOAT_LE = MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle DOUBLE_BE = MethodHandles.byteArrayViewVarHandle(double[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle DOUBLE_LE = MethodHandles.byteArrayViewVarHandle(double[].class, ByteOrder.LITTLE_ENDIAN);
+	// arrays at least this long are processed in parallel chunks
+	private static final int PARALLEL_THRESHOLD = 1 << 20;
+	private static final int CHUNK = 1 << 16;
+	
 	private ByteUtils() {}
 	
 	/**
@@ -107,7 +128,36 @@ public abstract class ByteUtils {
 	 * @see matches
 	 */	
 	public static void or(byte[] a, byte[] b, int L) {
-		for(int i = 0; i < L; i++) a[i] |= b[i];
+		or(a, 0, b, 0, L);
+	}
+	
+	/**
+	 * Performs logical <b>or</b> on regions of two byte arrays, 8 bytes at a time.
+	 *
+	 * @param a The target byte array.
+	 * @param aOff The offset of the first byte in the target byte array.
+	 * @param b The test byte array.
+	 * @param bOff The offset of the first byte in the test byte array.
+	 * @param L The number of bytes to logically <b>or</b>.
+	 * @throws ArrayIndexOutOfBoundsException if either region is not within its array.
+	 * @see or(byte[], byte[], int)
+	 */	
+	public static void or(byte[] a, int aOff, byte[] b, int bOff, int L) {
+		check(a, aOff, L);
+		check(b, bOff, L);
+		if(L < PARALLEL_THRESHOLD){
+			or0(a, aOff, b, bOff, L);
+		}else{
+			chunks(L).forEach(off -> or0(a, aOff + off, b, bOff + off, Math.min(CHUNK, L - off)));
+		}
+	}
+	
+	private static void or0(byte[] a, int aOff, byte[] b, int bOff, int L) {
+		var i = 0;
+		for(; i <= L - 8; i += 8){
+			WORDS.set(a, aOff + i, (long)WORDS.get(a, aOff + i) | (long)WORDS.get(b, bOff + i));
+		}
+		for(; i < L; i++) a[aOff + i] |= b[bOff + i];
 	}
 	
 	/**
@@ -122,7 +172,36 @@ public abstract class ByteUtils {
 	 * @see matches
 	 */	
 	public static void and(byte[] a, byte[] b, int L) {
-		for(int i = 0; i < L; i++) a[i] &= b[i];
+		and(a, 0, b, 0, L);
+	}
+	
+	/**
+	 * Performs logical <b>and</b> on regions of two byte arrays, 8 bytes at a time.
+	 *
+	 * @param a The target byte array.
+	 * @param aOff The offset of the first byte in the target byte array.
+	 * @param b The test byte array.
+	 * @param bOff The offset of the first byte in the test byte array.
+	 * @param L The number of bytes to logically <b>and</b>.
+	 * @throws ArrayIndexOutOfBoundsException if either region is not within its array.
+	 * @see and(byte[], byte[], int)
+	 */	
+	public static void and(byte[] a, int aOff, byte[] b, int bOff, int L) {
+		check(a, aOff, L);
+		check(b, bOff, L);
+		if(L < PARALLEL_THRESHOLD){
+			and0(a, aOff, b, bOff, L);
+		}else{
+			chunks(L).forEach(off -> and0(a, aOff + off, b, bOff + off, Math.min(CHUNK, L - off)));
+		}
+	}
+	
+	private static void and0(byte[] a, int aOff, byte[] b, int bOff, int L) {
+		var i = 0;
+		for(; i <= L - 8; i += 8){
+			WORDS.set(a, aOff + i, (long)WORDS.get(a, aOff + i) & (long)WORDS.get(b, bOff + i));
+		}
+		for(; i < L; i++) a[aOff + i] &= b[bOff + i];
 	}
 	
 	/**
@@ -138,10 +217,44 @@ public abstract class ByteUtils {
 	 * @see matches
 	 */		
 	public static byte[] xor(byte[] a, byte[] b, int L) {
-		var c = new byte[L];
-		for(int i = 0; i < L; i++) c[i] = (byte)(a[i] ^ b[i]);
+		final var c = new byte[L];
+		xor(a, 0, b, 0, c, 0, L);
 		return c;
 	}
+	
+	/**
+	 * Performs logical <b>xor</b> on regions of two byte arrays, 8 bytes at a time, 
+	 * writing the result into a region of a destination array, which may be either
+	 * of the source arrays.
+	 *
+	 * @param a The first byte array.
+	 * @param aOff The offset of the first byte in the first byte array.
+	 * @param b The second byte array.
+	 * @param bOff The offset of the first byte in the second byte array.
+	 * @param dst The destination byte array.
+	 * @param dstOff The offset in the destination byte array of the first byte of the result.
+	 * @param L The number of bytes to logically <b>xor</b>.
+	 * @throws ArrayIndexOutOfBoundsException if any region is not within its array.
+	 * @see xor(byte[], byte[], int)
+	 */		
+	public static void xor(byte[] a, int aOff, byte[] b, int bOff, byte[] dst, int dstOff, int L) {
+		check(a, aOff, L);
+		check(b, bOff, L);
+		check(dst, dstOff, L);
+		if(L < PARALLEL_THRESHOLD){
+			xor0(a, aOff, b, bOff, dst, dstOff, L);
+		}else{
+			chunks(L).forEach(off -> xor0(a, aOff + off, b, bOff + off, dst, dstOff + off, Math.min(CHUNK, L - off)));
+		}
+	}
+	
+	private static void xor0(byte[] a, int aOff, byte[] b, int bOff, byte[] dst, int dstOff, int L) {
+		var i = 0;
+		for(; i <= L - 8; i += 8){
+			WORDS.set(dst, dstOff + i, (long)WORDS.get(a, aOff + i) ^ (long)WORDS.get(b, bOff + i));
+		}
+		for(; i < L; i++) dst[dstOff + i] = (byte)(a[aOff + i] ^ b[bOff + i]);
+	}
 
 	// a & b = b	
 	/**
@@ -159,9 +272,51 @@ public abstract class ByteUtils {
 	 * @see xor
 	 */		
 	public static boolean matches(byte[] a, byte[] b, int L){
-		for(int i = 0; i < L; i++) if((a[i] & b[i]) != b[i]) return false;
+		return matches(a, 0, b, 0, L);
+	}
+	
+	/**
+	 * Returns <code>true</code> if for each of the L bytes of the two regions the followings 
+	 * holds: <code>a[aOff + i] &amp; b[bOff + i] = b[bOff + i]</code>, <code>false</code> otherwise.
+	 * The regions are compared 8 bytes at a time.
+	 *
+	 * @param a The target byte array.
+	 * @param aOff The offset of the first byte in the target byte array.
+	 * @param b The test byte array.
+	 * @param bOff The offset of the first byte in the test byte array.
+	 * @param L The number of bytes to test.
+	 * @return <code>true</code> if every bit set in the test region is set in the target region,
+	 * <code>false</code> otherwise.
+	 * @throws ArrayIndexOutOfBoundsException if either region is not within its array.
+	 * @see matches(byte[], byte[], int)
+	 */		
+	public static boolean matches(byte[] a, int aOff, byte[] b, int bOff, int L){
+		check(a, aOff, L);
+		check(b, bOff, L);
+		if(L < PARALLEL_THRESHOLD) return matches0(a, aOff, b, bOff, L);
+		return chunks(L).allMatch(off -> matches0(a, aOff + off, b, bOff + off, Math.min(CHUNK, L - off)));
+	}
+	
+	private static boolean matches0(byte[] a, int aOff, byte[] b, int bOff, int L){
+		var i = 0;
+		for(; i <= L - 8; i += 8){
+			final var w = (long)WORDS.get(b, bOff + i);
+			if(((long)WORDS.get(a, aOff + i) & w) != w) return false;
+		}
+		for(; i < L; i++) if((a[aOff + i] & b[bOff + i]) != b[bOff + i]) return false;
 		return true;
 	}
+	
+	// parallel stream of the offsets of the chunks of a large region, run in the common fork join pool
+	private static IntStream chunks(int L) {
+		return IntStream.range(0, (L + CHUNK - 1) / CHUNK).parallel().map(i -> i * CHUNK);
+	}
+	
+	private static void check(byte[] b, int off, int L) {
+		if(off < 0 || L < 0 || off > b.length - L){
+			throw new ArrayIndexOutOfBoundsException("Region out of bounds: "+off+" "+L+" of "+b.length);
+		}
+	}
 
 	/**
 	 * Returns a byte array containing the first L bytes of the provided array.
@@ -205,6 +360,134 @@ public abstract class ByteUtils {
 		return 8;
 	}
 	
+	/**
+	 * Returns the total encoded size of a <code>long</code> written as a VarInt, 
+	 * including the prefix byte of multi-byte VarInts.
+	 *
+	 * @param v The <code>long</code> whose encoded size is to be determined.
+	 * @return the total encoded size of a <code>long</code> written as a VarInt.
+	 * @throws IllegalArgumentException if the provided <code>long</code> is negative.
+	 * @see varSize
+	 * @see VarOutput#writeVarInt
+	 */		
+	public static int varIntSize(long v) {
+		return v >= 0 && v < 0xFDl ? 1 : 1 + varSize(v);
+	}
+	
+	/**
+	 * Returns the size in bytes of a <code>long</code> encoded as an unsigned LEB128 VarLong.
+	 *
+	 * @param v The <code>long</code> whose size is to be determined, treated as unsigned.
+	 * @return the size in bytes of the unsigned LEB128 encoding, between 1 and 10.
+	 * @see VarOutput#writeVarLong128
+	 */		
+	public static int var128Size(long v) {
+		return (63 - Long.numberOfLeadingZeros(v | 1)) / 7 + 1;
+	}
+	
+	/**
+	 * Returns the size in bytes of a <code>long</code> encoded as a signed ZigZag VarLong.
+	 *
+	 * @param v The <code>long</code> whose size is to be determined.
+	 * @return the size in bytes of the signed ZigZag encoding, between 1 and 10.
+	 * @see VarOutput#writeSignedVar
+	 */		
+	public static int signedVarSize(long v) {
+		return var128Size(zigZag(v));
+	}
+	
+	/**
+	 * ZigZag encodes a <code>long</code> so that values of small magnitude map to small
+	 * unsigned values: 0, -1, 1, -2, 2... map to 0, 1, 2, 3, 4...
+	 *
+	 * @param v The <code>long</code> to encode.
+	 * @return the ZigZag encoded value.
+	 * @see unZigZag
+	 */		
+	public static long zigZag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+	
+	/**
+	 * Decodes a ZigZag encoded <code>long</code>.
+	 *
+	 * @param v The ZigZag encoded value.
+	 * @return the decoded <code>long</code>.
+	 * @see zigZag
+	 */		
+	public static long unZigZag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	/**
+	 * Returns the number of bytes in the standard UTF-8 encoding of a string. Unpaired
+	 * surrogates count as the single byte <code>'?'</code> they are replaced with, as by
+	 * <code>String.getBytes(StandardCharsets.UTF_8)</code>.
+	 *
+	 * @param s The string whose encoded length is to be determined.
+	 * @return the number of bytes in the UTF-8 encoding of the string.
+	 * @see VarOutput#writeString
+	 */		
+	public static int utf8Length(String s) {
+		final var L = s.length();
+		var n = L;
+		for(int i = 0; i < L; i++){
+			final var c = s.charAt(i);
+			if(c < 0x80) continue;
+			if(c < 0x800){
+				n += 1;
+			}else if(!Character.isSurrogate(c)){
+				n += 2;
+			}else if(Character.isHighSurrogate(c) && i + 1 < L && Character.isLowSurrogate(s.charAt(i + 1))){
+				// 4 bytes for the pair
+				n += 2;
+				i++;
+			}
+		}
+		return n;
+	}
+	
+	// encodes a string as standard UTF-8 into dst, which must have room for 
+	// utf8Length(s) bytes from off, returning the offset following the last byte
+	static int encodeUTF8(String s, byte[] dst, int off) {
+		final var L = s.length();
+		var i = 0;
+		// ascii prefix
+		for(char c; i < L && (c = s.charAt(i)) < 0x80; i++) dst[off++] = (byte)c;
+		for(; i < L; i++){
+			final var c = s.charAt(i);
+			if(c < 0x80){
+				dst[off++] = (byte)c;
+			}else if(c < 0x800){
+				dst[off++] = (byte)(0xC0 | (c >> 6));
+				dst[off++] = (byte)(0x80 | (c & 0x3F));
+			}else if(!Character.isSurrogate(c)){
+				dst[off++] = (byte)(0xE0 | (c >> 12));
+				dst[off++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				dst[off++] = (byte)(0x80 | (c & 0x3F));
+			}else if(Character.isHighSurrogate(c) && i + 1 < L && Character.isLowSurrogate(s.charAt(i + 1))){
+				final var cp = Character.toCodePoint(c, s.charAt(++i));
+				dst[off++] = (byte)(0xF0 | (cp >> 18));
+				dst[off++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+				dst[off++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+				dst[off++] = (byte)(0x80 | (cp & 0x3F));
+			}else{
+				dst[off++] = '?';
+			}
+		}
+		return off;
+	}
+	
+	// copies the chars of a Latin-1 string into dst from off
+	static void encodeLatin1(String s, byte[] dst, int off) throws IOException {
+		final var L = s.length();
+		for(int i = 0; i < L; i++){
+			final var c = s.charAt(i);
+			if(c > 0xFF) throw new IOException("Not a Latin-1 char at "+i+": "+(int)c);
+			dst[off + i] = (byte)c;
+		}
+	}
+	
 	/**
 	 * Copies the bytes of an <code>int</code> into a byte array.
 	 *
@@ -214,8 +497,7 @@ public abstract class ByteUtils {
 	 * @see getInt
 	 */	        	
 	public static void put(byte[] b, int pos, int v) {
-		var buf = ByteBuffer.wrap(b);
-		buf.putInt(pos, v);
+		INT_BE.set(b, pos, v);
 	}
 	
 	/**
@@ -227,8 +509,103 @@ public abstract class ByteUtils {
 	 * @see getLong
 	 */		
 	public static void put(byte[] b, int pos, long v) {
-		var buf = ByteBuffer.wrap(b);
-		buf.putLong(pos, v);
+		LONG_BE.set(b, pos, v);
+	}
+	
+	/**
+	 * Copies the bytes of a <code>short</code> into a byte array, big endian.
+	 *
+	 * @param b The byte array into which to copy the <code>short</code>.
+	 * @param pos The position in the byte array to copy the <code>short</code>.
+	 * @param v The <code>short</code> to copy.
+	 * @see getShort
+	 */		
+	public static void putShort(byte[] b, int pos, short v) {
+		SHORT_BE.set(b, pos, v);
+	}
+	
+	/**
+	 * Copies the bytes of a <code>float</code> into a byte array, big endian.
+	 *
+	 * @param b The byte array into which to copy the <code>float</code>.
+	 * @param pos The position in the byte array to copy the <code>float</code>.
+	 * @param v The <code>float</code> to copy.
+	 * @see getFloat
+	 */		
+	public static void putFloat(byte[] b, int pos, float v) {
+		FLOAT_BE.set(b, pos, v);
+	}
+	
+	/**
+	 * Copies the bytes of a <code>double</code> into a byte array, big endian.
+	 *
+	 * @param b The byte array into which to copy the <code>double</code>.
+	 * @param pos The position in the byte array to copy the <code>double</code>.
+	 * @param v The <code>double</code> to copy.
+	 * @see getDouble
+	 */		
+	public static void putDouble(byte[] b, int pos, double v) {
+		DOUBLE_BE.set(b, pos, v);
+	}
+	
+	/**
+	 * Copies the bytes of a <code>short</code> into a byte array, little endian.
+	 *
+	 * @param b The byte array into which to copy the <code>short</code>.
+	 * @param pos The position in the byte array to copy the <code>short</code>.
+	 * @param v The <code>short</code> to copy.
+	 * @see getShortLE
+	 */		
+	public static void putShortLE(byte[] b, int pos, short v) {
+		SHORT_LE.set(b, pos, v);
+	}
+	
+	/**
+	 * Copies the bytes of an <code>int</code> into a byte array, little endian.
+	 *
+	 * @param b The byte array into which to copy the <code>int</code>.
+	 * @param pos The position in the byte array to copy the <code>int</code>.
+	 * @param v The <code>int</code> to copy.
+	 * @see getIntLE
+	 */		
+	public static void putIntLE(byte[] b, int pos, int v) {
+		INT_LE.set(b, pos, v);
+	}
+	
+	/**
+	 * Copies the bytes of a <code>long</code> into a byte array, little endian.
+	 *
+	 * @param b The byte array into which to copy the <code>long</code>.
+	 * @param pos The position in the byte array to copy the <code>long</code>.
+	 * @param v The <code>long</code> to copy.
+	 * @see getLongLE
+	 */		
+	public static void putLongLE(byte[] b, int pos, long v) {
+		LONG_LE.set(b, pos, v);
+	}
+	
+	/**
+	 * Copies the bytes of a <code>float</code> into a byte array, little endian.
+	 *
+	 * @param b The byte array into which to copy the <code>float</code>.
+	 * @param pos The position in the byte array to copy the <code>float</code>.
+	 * @param v The <code>float</code> to copy.
+	 * @see getFloatLE
+	 */		
+	public static void putFloatLE(byte[] b, int pos, float v) {
+		FLOAT_LE.set(b, pos, v);
+	}
+	
+	/**
+	 * Copies the bytes of a <code>double</code> into a byte array, little endian.
+	 *
+	 * @param b The byte array into which to copy the <code>double</code>.
+	 * @param pos The position in the byte array to copy the <code>double</code>.
+	 * @param v The <code>double</code> to copy.
+	 * @see getDoubleLE
+	 */		
+	public static void putDoubleLE(byte[] b, int pos, double v) {
+		DOUBLE_LE.set(b, pos, v);
 	}
 	
 	/**
@@ -264,8 +641,7 @@ public abstract class ByteUtils {
 	 * @see put(byte[], int, int)
 	 */		
 	public static int getInt(byte[] b, int pos) {
-		var buf = ByteBuffer.wrap(b);
-		return buf.getInt(pos);
+		return (int)INT_BE.get(b, pos);
 	}
 	
 	/**
@@ -277,8 +653,259 @@ public abstract class ByteUtils {
 	 * @see put(byte[], int, long)
 	 */	  
 	public static long getLong(byte[] b, int pos) {
-		var buf = ByteBuffer.wrap(b);
-		return buf.getLong(pos);
+		return (long)LONG_BE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts a big endian <code>short</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return a <code>short</code> from the provided byte array.
+	 * @see putShort(byte[], int, short)
+	 */		
+	public static short getShort(byte[] b, int pos) {
+		return (short)SHORT_BE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts a big endian unsigned <code>short</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return an unsigned <code>short</code> as an <code>int</code>.
+	 * @see putShort(byte[], int, short)
+	 */		
+	public static int getUnsignedShort(byte[] b, int pos) {
+		return (short)SHORT_BE.get(b, pos) & 0xFFFF;
+	}
+	
+	/**
+	 * Extracts a big endian unsigned <code>int</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return an unsigned <code>int</code> as a <code>long</code>.
+	 * @see put(byte[], int, int)
+	 */		
+	public static long getUnsignedInt(byte[] b, int pos) {
+		return (int)INT_BE.get(b, pos) & 0xFFFFFFFFL;
+	}
+	
+	/**
+	 * Extracts a big endian <code>float</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return a <code>float</code> from the provided byte array.
+	 * @see putFloat(byte[], int, float)
+	 */		
+	public static float getFloat(byte[] b, int pos) {
+		return (float)FLOAT_BE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts a big endian <code>double</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return a <code>double</code> from the provided byte array.
+	 * @see putDouble(byte[], int, double)
+	 */		
+	public static double getDouble(byte[] b, int pos) {
+		return (double)DOUBLE_BE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts a little endian <code>short</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return a <code>short</code> from the provided byte array.
+	 * @see putShortLE(byte[], int, short)
+	 */		
+	public static short getShortLE(byte[] b, int pos) {
+		return (short)SHORT_LE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts a little endian unsigned <code>short</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return an unsigned <code>short</code> as an <code>int</code>.
+	 * @see putShortLE(byte[], int, short)
+	 */		
+	public static int getUnsignedShortLE(byte[] b, int pos) {
+		return (short)SHORT_LE.get(b, pos) & 0xFFFF;
+	}
+	
+	/**
+	 * Extracts a little endian <code>int</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return an <code>int</code> from the provided byte array.
+	 * @see putIntLE(byte[], int, int)
+	 */		
+	public static int getIntLE(byte[] b, int pos) {
+		return (int)INT_LE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts a little endian unsigned <code>int</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return an unsigned <code>int</code> as a <code>long</code>.
+	 * @see putIntLE(byte[], int, int)
+	 */		
+	public static long getUnsignedIntLE(byte[] b, int pos) {
+		return (int)INT_LE.get(b, pos) & 0xFFFFFFFFL;
+	}
+	
+	/**
+	 * Extracts a little endian <code>long</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return a <code>long</code> from the provided byte array.
+	 * @see putLongLE(byte[], int, long)
+	 */		
+	public static long getLongLE(byte[] b, int pos) {
+		return (long)LONG_LE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts a little endian <code>float</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return a <code>float</code> from the provided byte array.
+	 * @see putFloatLE(byte[], int, float)
+	 */		
+	public static float getFloatLE(byte[] b, int pos) {
+		return (float)FLOAT_LE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts a little endian <code>double</code> from a byte array.
+	 *
+	 * @param b The source byte array.
+	 * @param pos The position in the source byte array to begin the extraction.
+	 * @return a <code>double</code> from the provided byte array.
+	 * @see putDoubleLE(byte[], int, double)
+	 */		
+	public static double getDoubleLE(byte[] b, int pos) {
+		return (double)DOUBLE_LE.get(b, pos);
+	}
+	
+	/**
+	 * Extracts <code>short</code>s from a byte array.
+	 *
+	 * @param src The source byte array.
+	 * @param pos The position in the source byte array of the first <code>short</code>.
+	 * @param dst The array into which to extract the <code>short</code>s.
+	 * @param off The offset in the destination array of the first <code>short</code>.
+	 * @param len The number of <code>short</code>s to extract.
+	 * @param order The byte order of the source byte array.
+	 * @throws IndexOutOfBoundsException if either region is not within its array.
+	 */		
+	public static void getShorts(byte[] src, int pos, short[] dst, int off, int len, ByteOrder order) {
+		Objects.checkFromIndexSize(off, len, dst.length);
+		Objects.checkFromIndexSize(pos, 2 * len, src.length);
+		final var h = order == ByteOrder.BIG_ENDIAN ? SHORT_BE : SHORT_LE;
+		for(int i = 0; i < len; i++) dst[off + i] = (short)h.get(src, pos + 2 * i);
+	}
+	
+	/**
+	 * Extracts <code>int</code>s from a byte array.
+	 *
+	 * @param src The source byte array.
+	 * @param pos The position in the source byte array of the first <code>int</code>.
+	 * @param dst The array into which to extract the <code>int</code>s.
+	 * @param off The offset in the destination array of the first <code>int</code>.
+	 * @param len The number of <code>int</code>s to extract.
+	 * @param order The byte order of the source byte array.
+	 * @throws IndexOutOfBoundsException if either region is not within its array.
+	 */		
+	public static void getInts(byte[] src, int pos, int[] dst, int off, int len, ByteOrder order) {
+		Objects.checkFromIndexSize(off, len, dst.length);
+		Objects.checkFromIndexSize(pos, 4 * len, src.length);
+		final var h = order == ByteOrder.BIG_ENDIAN ? INT_BE : INT_LE;
+		for(int i = 0; i < len; i++) dst[off + i] = (int)h.get(src, pos + 4 * i);
+	}
+	
+	/**
+	 * Extracts <code>long</code>s from a byte array.
+	 *
+	 * @param src The source byte array.
+	 * @param pos The position in the source byte array of the first <code>long</code>.
+	 * @param dst The array into which to extract the <code>long</code>s.
+	 * @param off The offset in the destination array of the first <code>long</code>.
+	 * @param len The number of <code>long</code>s to extract.
+	 * @param order The byte order of the source byte array.
+	 * @throws IndexOutOfBoundsException if either region is not within its array.
+	 */		
+	public static void getLongs(byte[] src, int pos, long[] dst, int off, int len, ByteOrder order) {
+		Objects.checkFromIndexSize(off, len, dst.length);
+		Objects.checkFromIndexSize(pos, 8 * len, src.length);
+		final var h = order == ByteOrder.BIG_ENDIAN ? LONG_BE : LONG_LE;
+		for(int i = 0; i < len; i++) dst[off + i] = (long)h.get(src, pos + 8 * i);
+	}
+	
+	/**
+	 * Copies <code>short</code>s into a byte array.
+	 *
+	 * @param dst The destination byte array.
+	 * @param pos The position in the destination byte array of the first <code>short</code>.
+	 * @param src The array of <code>short</code>s to copy.
+	 * @param off The offset in the source array of the first <code>short</code>.
+	 * @param len The number of <code>short</code>s to copy.
+	 * @param order The byte order of the destination byte array.
+	 * @throws IndexOutOfBoundsException if either region is not within its array.
+	 */		
+	public static void putShorts(byte[] dst, int pos, short[] src, int off, int len, ByteOrder order) {
+		Objects.checkFromIndexSize(off, len, src.length);
+		Objects.checkFromIndexSize(pos, 2 * len, dst.length);
+		final var h = order == ByteOrder.BIG_ENDIAN ? SHORT_BE : SHORT_LE;
+		for(int i = 0; i < len; i++) h.set(dst, pos + 2 * i, src[off + i]);
+	}
+	
+	/**
+	 * Copies <code>int</code>s into a byte array.
+	 *
+	 * @param dst The destination byte array.
+	 * @param pos The position in the destination byte array of the first <code>int</code>.
+	 * @param src The array of <code>int</code>s to copy.
+	 * @param off The offset in the source array of the first <code>int</code>.
+	 * @param len The number of <code>int</code>s to copy.
+	 * @param order The byte order of the destination byte array.
+	 * @throws IndexOutOfBoundsException if either region is not within its array.
+	 */		
+	public static void putInts(byte[] dst, int pos, int[] src, int off, int len, ByteOrder order) {
+		Objects.checkFromIndexSize(off, len, src.length);
+		Objects.checkFromIndexSize(pos, 4 * len, dst.length);
+		final var h = order == ByteOrder.BIG_ENDIAN ? INT_BE : INT_LE;
+		for(int i = 0; i < len; i++) h.set(dst, pos + 4 * i, src[off + i]);
+	}
+	
+	/**
+	 * Copies <code>long</code>s into a byte array.
+	 *
+	 * @param dst The destination byte array.
+	 * @param pos The position in the destination byte array of the first <code>long</code>.
+	 * @param src The array of <code>long</code>s to copy.
+	 * @param off The offset in the source array of the first <code>long</code>.
+	 * @param len The number of <code>long</code>s to copy.
+	 * @param order The byte order of the destination byte array.
+	 * @throws IndexOutOfBoundsException if either region is not within its array.
+	 */		
+	public static void putLongs(byte[] dst, int pos, long[] src, int off, int len, ByteOrder order) {
+		Objects.checkFromIndexSize(off, len, src.length);
+		Objects.checkFromIndexSize(pos, 8 * len, dst.length);
+		final var h = order == ByteOrder.BIG_ENDIAN ? LONG_BE : LONG_LE;
+		for(int i = 0; i < len; i++) h.set(dst, pos + 8 * i, src[off + i]);
 	}
 	
 	/**
@@ -323,6 +950,29 @@ public abstract class ByteUtils {
 		return new InetSocketAddress(add, port);
 	}
     
+	/**
+	 * Extracts a <code>SocketAddress</code> from a byte array, returning the canonical 
+	 * instance held by the provided cache.
+	 *
+	 * @param src The source byte array.
+	 * @param offset The position in the source byte array to begin the extraction.
+	 * @param cache The cache of canonical addresses.
+	 * @return a <code>InetSocketAddress</code> from the provided byte array.
+	 * @throws IOException if the bytes are not a valid address.
+	 * @see inet(byte[], int, SocketAddress)
+	 */	    				
+	public static InetSocketAddress inet(byte[] src, int offset, AddressCache cache) throws IOException {
+		final long hi, lo;
+		if(src[offset] == (byte)0xff && src[offset + 1] == (byte)0xff){
+			hi = 0;
+			lo = AddressCache.IPV4_MAPPED | (getInt(src, offset + 2) & 0xFFFFFFFFL);
+		}else{
+			hi = getLong(src, offset);
+			lo = getLong(src, offset + 8);
+		}
+		return cache.get(hi, lo, getInt(src, offset + 16));
+	}
+    
 	/**
 	 * Extracts a byte array from a byte array.
 	 *
@@ -346,11 +996,8 @@ public abstract class ByteUtils {
 	 * @param offset The position in the byte array to copy the <code>long</code>.
 	 */		
 	public static void unsignedIntToBytes(long l, byte[] buf, int offset) {
-        buf[offset] = (byte) ((l & 0xFF000000L) >>> 24);
-        buf[offset + 1] = (byte) ((l & 0x00FF0000L) >>> 16);
-        buf[offset + 2] = (byte) ((l & 0x0000FF00L) >>> 8);
-        buf[offset + 3] = (byte) ((l & 0x000000FFL));
-    }
+		INT_BE.set(buf, offset, (int)l);
+	}
 
 	// unsigned int as long    
 	/**
@@ -373,14 +1020,7 @@ public abstract class ByteUtils {
 	 * @return an unsigned int as a <code>long</code>.
 	 */	        
     public static long bytesToUnsignedInt(byte[] buf, int offset) {
-    	int l1, l2, l3, l4;
-    	l1 = (0x000000FF & ((int)buf[offset]));
-        l2 = (0x000000FF & ((int)buf[offset+1]));
-        l3 = (0x000000FF & ((int)buf[offset+2]));
-        l4 = (0x000000FF & ((int)buf[offset+3]));
-        
-        var l = ((long) (l1 << 24 | l2 << 16 | l3 << 8 | l4)) & 0xFFFFFFFFL;
-        return l;
+		return getUnsignedInt(buf, offset);
     }
     
 	/**
@@ -391,10 +1031,8 @@ public abstract class ByteUtils {
 	 */	    
     public static int[] ints(byte[] b) {
     	if(b.length % 4 != 0) throw new IllegalArgumentException();
-    	var buf =  ByteBuffer.wrap(b).asIntBuffer();
-    	var L = b.length / 4;
-    	var ints = new int[L];
-    	for(int i = 0; i < L; i++) ints[i] = buf.get();
+    	final var ints = new int[b.length / 4];
+    	getInts(b, 0, ints, 0, ints.length, ByteOrder.BIG_ENDIAN);
     	return ints;
     }
     
@@ -405,12 +1043,9 @@ public abstract class ByteUtils {
 	 * @return a byte array from the provided char array.
 	 */	    
     public static byte[] bytes(char... chars) {
-    	var buf = ByteBuffer.allocate(2 * chars.length);
-    	for(int i = 0; i < chars.length; i++){
-    		buf.putChar(chars[i]);
-    	}
-    	
-    	return buf.array();
+    	final var b = new byte[2 * chars.length];
+    	for(int i = 0; i < chars.length; i++) SHORT_BE.set(b, 2 * i, (short)chars[i]);
+    	return b;
     }
 
 	/**
@@ -420,12 +1055,9 @@ public abstract class ByteUtils {
 	 * @return a byte array from the provided int array.
 	 */		   
     public static byte[] bytes(int ... ints) {
-    	var buf = ByteBuffer.allocate(4 * ints.length);
-    	for(int i = 0; i < ints.length; i++){
-    		buf.putInt(ints[i]);
-    	}
-    	
-    	return buf.array();
+    	final var b = new byte[4 * ints.length];
+    	putInts(b, 0, ints, 0, ints.length, ByteOrder.BIG_ENDIAN);
+    	return b;
     }
 
 	/**
@@ -435,12 +1067,7 @@ public abstract class ByteUtils {
 	 * @return a <code>CharSquence</code> from an int array.
 	 */		    
     public static CharSequence charseq(int... ints) {
-    	var buf = ByteBuffer.allocate(4 * ints.length);
-    	for(int i = 0; i < ints.length; i++){
-    		buf.putInt(ints[i]);
-    	}
-    	
-    	return buf.asCharBuffer();
+    	return CharBuffer.wrap(chars(ints));
     }
 
 	/**
@@ -450,16 +1077,12 @@ public abstract class ByteUtils {
 	 * @return a char array from the provided int array.
 	 */		
     public static char[] chars(int... ints) {
-    	var buf = ByteBuffer.allocate(4 * ints.length);
+    	// high then low half of each int
+    	final var chars = new char[2 * ints.length];
     	for(int i = 0; i < ints.length; i++){
-    		buf.putInt(ints[i]);
+    		chars[2 * i] = (char)(ints[i] >>> 16);
+    		chars[2 * i + 1] = (char)ints[i];
     	}
-    	
-    	var cb = buf.asCharBuffer();
-    	
-    	var L = cb.length();
-    	var chars = new char[L];
-    	for(int i = 0; i < L; i++) chars[i] = cb.get();
     	return chars;
     }
 }
@@ -0,0 +1,218 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.CRC32C;
+
+/**
+ * <code>VarInput</code> decorator which computes the CRC32C checksum of the bytes 
+ * read through it as they are read.
+ *
+ * <p>This allows an object to be decoded straight from a stream and its checksum 
+ * verified afterwards, without buffering its persistent data:</p>
+ *
+ * <pre>
+ * CheckedVarInput checked = new CheckedVarInput(in);
+ * Foo foo = new Foo(checked);
+ * checked.verify(in.readInt());
+ * </pre>
+ *
+ * @see CheckedVarOutput
+ * @author Michael Sargent
+ */
+public final class CheckedVarInput implements VarInput {
+	private final VarInput in;
+	private final CRC32C crc = new CRC32C();
+	private final byte[] scratch = new byte[8];
+	// the byte read ahead of a lone '\r' by readLine, or -1
+	private int pending = -1;
+	
+	/**
+	 * Initializes a newly created <code>CheckedVarInput</code> object.
+	 *
+	 * @param in The <code>VarInput</code> to read from.
+	 */
+	public CheckedVarInput(VarInput in) {
+		this.in = in;
+	}
+	
+	/**
+	 * Returns the CRC32C checksum of the bytes read since this object was created or
+	 * last reset.
+	 *
+	 * @return The checksum of the bytes read.
+	 */
+	public int checksum() {
+		return (int)crc.getValue();
+	}
+	
+	/**
+	 * Verifies the checksum of the bytes read since this object was created or last 
+	 * reset, and resets it.
+	 *
+	 * @param checksum The expected checksum.
+	 * @throws IOException if the checksum does not match.
+	 */
+	public void verify(int checksum) throws IOException {
+		final var actual = checksum();
+		crc.reset();
+		if(actual != checksum) throw new IOException("Checksum mismatch");
+	}
+	
+	/**
+	 * Resets the checksum.
+	 */
+	public void reset() {
+		crc.reset();
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		if(len > 0 && pending >= 0){
+			b[off] = (byte)pending;
+			pending = -1;
+			in.readFully(b, off + 1, len - 1);
+		}else{
+			in.readFully(b, off, len);
+		}
+		crc.update(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		// skipped bytes must still be checked
+		final var b = new byte[Math.min(Math.max(n, 0), 8192)];
+		var skipped = 0;
+		while(skipped < n){
+			final var k = Math.min(b.length, n - skipped);
+			readFully(b, 0, k);
+			skipped += k;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		final byte b;
+		if(pending >= 0){
+			b = (byte)pending;
+			pending = -1;
+		}else{
+			b = in.readByte();
+		}
+		crc.update(b);
+		return b;
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		readFully(scratch, 0, 2);
+		return ByteUtils.getShort(scratch, 0);
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char)readShort();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		readFully(scratch, 0, 4);
+		return ByteUtils.getInt(scratch, 0);
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		readFully(scratch, 0, 8);
+		return ByteUtils.getLong(scratch, 0);
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		int c;
+		try{
+			c = readUnsignedByte();
+		}catch(EOFException e){
+			return null;
+		}
+		final var line = new StringBuilder();
+		try{
+			for(; c != '\n'; c = readUnsignedByte()){
+				if(c == '\r'){
+					// "\r\n" is a single terminator, any other byte is kept for the next read
+					final var next = in.readUnsignedByte();
+					if(next == '\n'){
+						crc.update(next);
+					}else{
+						pending = next;
+					}
+					break;
+				}
+				line.append((char)c);
+			}
+		}catch(EOFException e){
+			// the last line need not be terminated
+		}
+		return line.toString();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+}
@@ -0,0 +1,157 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.util.zip.CRC32C;
+
+/**
+ * <code>VarOutput</code> decorator which computes the CRC32C checksum of the bytes 
+ * written through it as they are written.
+ *
+ * <p>This allows an <code>Encodable</code> object to be followed by a checksum of its
+ * persistent data without a second pass over the encoded bytes:</p>
+ *
+ * <pre>
+ * CheckedVarOutput checked = new CheckedVarOutput(out);
+ * foo.write(checked);
+ * out.writeInt(checked.checksum());
+ * </pre>
+ *
+ * @see CheckedVarInput
+ * @author Michael Sargent
+ */
+public final class CheckedVarOutput implements VarOutput {
+	private final VarOutput out;
+	private final CRC32C crc = new CRC32C();
+	private final byte[] scratch = new byte[8];
+	
+	/**
+	 * Initializes a newly created <code>CheckedVarOutput</code> object.
+	 *
+	 * @param out The <code>VarOutput</code> to write to.
+	 */
+	public CheckedVarOutput(VarOutput out) {
+		this.out = out;
+	}
+	
+	/**
+	 * Returns the CRC32C checksum of the bytes written since this object was created or
+	 * last reset.
+	 *
+	 * @return The checksum of the bytes written.
+	 */
+	public int checksum() {
+		return (int)crc.getValue();
+	}
+	
+	/**
+	 * Resets the checksum.
+	 */
+	public void reset() {
+		crc.reset();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		crc.update(b);
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		crc.update(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		write(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v) throws IOException {
+		write(v);
+	}
+
+	@Override
+	public void writeShort(int v) throws IOException {
+		ByteUtils.putShort(scratch, 0, (short)v);
+		write(scratch, 0, 2);
+	}
+
+	@Override
+	public void writeChar(int v) throws IOException {
+		writeShort(v);
+	}
+
+	@Override
+	public void writeInt(int v) throws IOException {
+		ByteUtils.put(scratch, 0, v);
+		write(scratch, 0, 4);
+	}
+
+	@Override
+	public void writeLong(long v) throws IOException {
+		ByteUtils.put(scratch, 0, v);
+		write(scratch, 0, 8);
+	}
+
+	@Override
+	public void writeFloat(float v) throws IOException {
+		writeInt(Float.floatToIntBits(v));
+	}
+
+	@Override
+	public void writeDouble(double v) throws IOException {
+		writeLong(Double.doubleToLongBits(v));
+	}
+
+	@Override
+	public void writeBytes(String s) throws IOException {
+		final var b = new byte[s.length()];
+		for(int i = 0; i < b.length; i++) b[i] = (byte)s.charAt(i);
+		write(b);
+	}
+
+	@Override
+	public void writeChars(String s) throws IOException {
+		final var b = new byte[2 * s.length()];
+		for(int i = 0; i < s.length(); i++) ByteUtils.putShort(b, 2 * i, (short)s.charAt(i));
+		write(b);
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		final var b = new ByteArrayVarOutput(2 + s.length());
+		b.writeUTF(s);
+		write(b.array(), 0, b.size());
+	}
+}
@@ -0,0 +1,183 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/*
+ * JFR events emitted by the codec layer. Each is timed from begin() to commit() and only 
+ * recorded when slower than its threshold, which may be changed in the recording 
+ * settings. The jdk.jfr module is optional: when it is not present no events are created,
+ * and the event classes, which are only referenced from Events, are never loaded.
+ */
+final class CodecEvents {
+	static final int ENCODE = 0;
+	static final int DECODE = 1;
+	static final int STREAM_READ = 2;
+	static final int STREAM_WRITE = 3;
+	
+	private static final boolean AVAILABLE = available();
+	
+	private CodecEvents() {}
+	
+	// returns the started event, or null if jdk.jfr is not available
+	static Object begin(int kind) {
+		return AVAILABLE ? Events.begin(kind) : null;
+	}
+	
+	// type is the class encoded or decoded, or the class of the stream
+	static void commit(Object event, Class<?> type, long bytes) {
+		if(event != null) Events.commit(event, type, bytes);
+	}
+	
+	private static boolean available() {
+		try{
+			Class.forName("jdk.jfr.Event", false, CodecEvents.class.getClassLoader());
+			return true;
+		}catch(ClassNotFoundException | LinkageError e){
+			return false;
+		}
+	}
+	
+	private static final class Events {
+		static Object begin(int kind) {
+			final Event event;
+			switch(kind){
+			case ENCODE: 
+				event = new Encode();
+				break;
+			case DECODE: 
+				event = new Decode();
+				break;
+			case STREAM_READ: 
+				event = new StreamRead();
+				break;
+			default: 
+				event = new StreamWrite();
+			}
+			event.begin();
+			return event;
+		}
+		
+		static void commit(Object o, Class<?> type, long bytes) {
+			final var event = (Event)o;
+			event.end();
+			if(event.shouldCommit()){
+				((Sized)event).set(type, bytes);
+				event.commit();
+			}
+		}
+	}
+	
+	private interface Sized {
+		void set(Class<?> type, long bytes);
+	}
+	
+	@Name("rs.igram.kiribi.io.Encode")
+	@Label("Encode")
+	@Category({"Kiribi", "Codec"})
+	@Description("Encoding of an Encodable object")
+	@Threshold("1 ms")
+	static final class Encode extends Event implements Sized {
+		@Label("Type")
+		Class<?> type;
+		
+		@Label("Size")
+		@DataAmount
+		long bytes;
+		
+		@Override
+		public void set(Class<?> type, long bytes) {
+			this.type = type;
+			this.bytes = bytes;
+		}
+	}
+	
+	@Name("rs.igram.kiribi.io.Decode")
+	@Label("Decode")
+	@Category({"Kiribi", "Codec"})
+	@Description("Decoding of an object from a byte array")
+	@Threshold("1 ms")
+	static final class Decode extends Event implements Sized {
+		@Label("Type")
+		Class<?> type;
+		
+		@Label("Size")
+		@DataAmount
+		long bytes;
+		
+		@Override
+		public void set(Class<?> type, long bytes) {
+			this.type = type;
+			this.bytes = bytes;
+		}
+	}
+	
+	@Name("rs.igram.kiribi.io.StreamRead")
+	@Label("ByteStream Read")
+	@Category({"Kiribi", "Stream"})
+	@Description("Read of a frame from a ByteStream, including the time blocked")
+	@Threshold("10 ms")
+	static final class StreamRead extends Event implements Sized {
+		@Label("Stream")
+		Class<?> stream;
+		
+		@Label("Size")
+		@DataAmount
+		long bytes;
+		
+		@Override
+		public void set(Class<?> stream, long bytes) {
+			this.stream = stream;
+			this.bytes = bytes;
+		}
+	}
+	
+	@Name("rs.igram.kiribi.io.StreamWrite")
+	@Label("ByteStream Write")
+	@Category({"Kiribi", "Stream"})
+	@Description("Write of a frame to a ByteStream, including any held back frames flushed")
+	@Threshold("10 ms")
+	static final class StreamWrite extends Event implements Sized {
+		@Label("Stream")
+		Class<?> stream;
+		
+		@Label("Size")
+		@DataAmount
+		long bytes;
+		
+		@Override
+		public void set(Class<?> stream, long bytes) {
+			this.stream = stream;
+			this.bytes = bytes;
+		}
+	}
+}
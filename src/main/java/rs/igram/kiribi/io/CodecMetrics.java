@@ -0,0 +1,271 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters for the codec layer, cheap enough to be left enabled in production.
+ *
+ * <p>Instances are passed to the <code>VarInputStream</code> and <code>VarOutputStream</code>
+ * constructors, and may be shared by any number of streams. The counters are 
+ * <code>LongAdder</code>s, so streams on many threads update them without contention.
+ * Bytes read and written are accumulated by each stream and added at the end of each 
+ * frame or object, and when the stream is flushed or closed.</p>
+ *
+ * <p>Objects encoded and decoded are counted by class, giving the share of the traffic
+ * taken by each message type. Those decoded are counted by 
+ * <code>VarInputStream.read(Decoder)</code>, and those encoded by 
+ * <code>VarOutputStream.write(Encodable)</code> and by <code>ByteStream</code>s.</p>
+ *
+ * <p>Metrics may be exposed as a JMX MXBean with {@link #register}, which requires the
+ * <code>java.management</code> module.</p>
+ *
+ * <pre>
+ * CodecMetrics metrics = new CodecMetrics();
+ * metrics.register("peers");
+ * ByteStream stream = ByteStream.stream(
+ *     new VarInputStream(socket.getInputStream(), metrics),
+ *     new VarOutputStream(socket.getOutputStream(), metrics));
+ * </pre>
+ *
+ * @see VarInputStream
+ * @see VarOutputStream
+ * @author Michael Sargent
+ */
+public final class CodecMetrics implements CodecMetricsMXBean {
+	final LongAdder bytesRead = new LongAdder();
+	final LongAdder bytesWritten = new LongAdder();
+	final LongAdder framesRead = new LongAdder();
+	final LongAdder framesWritten = new LongAdder();
+	private final LongAdder[] varInts = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+	private final LongAdder strings = new LongAdder();
+	private final LongAdder stringBytes = new LongAdder();
+	private final LongAdder byteArrays = new LongAdder();
+	private final LongAdder byteArrayBytes = new LongAdder();
+	private final Types decoded = new Types();
+	private final Types encoded = new Types();
+	private volatile Object name;
+	
+	/**
+	 * Initializes a newly created <code>CodecMetrics</code> object.
+	 */
+	public CodecMetrics() {}
+	
+	void varInt(long v) {
+		varInts[v < 0xFDL ? 0 : v <= 0xFFFFL ? 1 : v <= 0xFFFFFFFFL ? 2 : 3].increment();
+	}
+	
+	void string(int length) {
+		strings.increment();
+		stringBytes.add(length);
+	}
+	
+	void byteArray(int length) {
+		byteArrays.increment();
+		byteArrayBytes.add(length);
+	}
+	
+	void decoded(Class<?> type, long bytes) {
+		decoded.record(type, bytes);
+	}
+	
+	void encoded(Class<?> type, long bytes) {
+		encoded.record(type, bytes);
+	}
+	
+	/**
+	 * Registers these metrics with the platform MBean server under the name
+	 * <code>rs.igram.kiribi.io:type=CodecMetrics,name=</code><i>name</i>.
+	 *
+	 * @param name The name to register these metrics under.
+	 * @throws IllegalStateException if these metrics are already registered, or could 
+	 * not be registered.
+	 * @throws UnsupportedOperationException if JMX is not available.
+	 */
+	public synchronized void register(String name) {
+		if(this.name != null) throw new IllegalStateException("Already registered");
+		try{
+			this.name = Registration.register(this, name);
+		}catch(NoClassDefFoundError e){
+			throw new UnsupportedOperationException("JMX not available", e);
+		}
+	}
+	
+	/**
+	 * Unregisters these metrics from the platform MBean server, if registered.
+	 */
+	public synchronized void unregister() {
+		if(name == null) return;
+		Registration.unregister(name);
+		name = null;
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	@Override
+	public long getFramesRead() {
+		return framesRead.sum();
+	}
+
+	@Override
+	public long getFramesWritten() {
+		return framesWritten.sum();
+	}
+
+	@Override
+	public long[] getVarIntSizes() {
+		final var sizes = new long[varInts.length];
+		for(int i = 0; i < sizes.length; i++) sizes[i] = varInts[i].sum();
+		return sizes;
+	}
+
+	@Override
+	public long getStrings() {
+		return strings.sum();
+	}
+
+	@Override
+	public long getStringBytes() {
+		return stringBytes.sum();
+	}
+
+	@Override
+	public long getByteArrays() {
+		return byteArrays.sum();
+	}
+
+	@Override
+	public long getByteArrayBytes() {
+		return byteArrayBytes.sum();
+	}
+
+	@Override
+	public Map<String,Long> getDecodes() {
+		return decoded.snapshot(c -> c.count);
+	}
+
+	@Override
+	public Map<String,Long> getDecodedBytes() {
+		return decoded.snapshot(c -> c.bytes);
+	}
+
+	@Override
+	public Map<String,Long> getEncodes() {
+		return encoded.snapshot(c -> c.count);
+	}
+
+	@Override
+	public Map<String,Long> getEncodedBytes() {
+		return encoded.snapshot(c -> c.bytes);
+	}
+
+	@Override
+	public void reset() {
+		bytesRead.reset();
+		bytesWritten.reset();
+		framesRead.reset();
+		framesWritten.reset();
+		for(var c : varInts) c.reset();
+		strings.reset();
+		stringBytes.reset();
+		byteArrays.reset();
+		byteArrayBytes.reset();
+		decoded.reset();
+		encoded.reset();
+	}
+	
+	// per class counters, looked up through a ClassValue and reported by class name
+	private static final class Types {
+		private final ConcurrentHashMap<String,Counter> counters = new ConcurrentHashMap<>();
+		private final ClassValue<Counter> lookup = new ClassValue<>() {
+			@Override
+			protected Counter computeValue(Class<?> type) {
+				return counters.computeIfAbsent(type.getName(), k -> new Counter());
+			}
+		};
+		
+		void record(Class<?> type, long bytes) {
+			final var c = lookup.get(type);
+			c.count.increment();
+			c.bytes.add(bytes);
+		}
+		
+		Map<String,Long> snapshot(Function<Counter,LongAdder> f) {
+			final var map = new TreeMap<String,Long>();
+			counters.forEach((k, v) -> map.put(k, f.apply(v).sum()));
+			return map;
+		}
+		
+		void reset() {
+			for(var c : counters.values()){
+				c.count.reset();
+				c.bytes.reset();
+			}
+		}
+	}
+	
+	private static final class Counter {
+		final LongAdder count = new LongAdder();
+		final LongAdder bytes = new LongAdder();
+	}
+	
+	// kept apart so that javax.management is only loaded when used
+	private static final class Registration {
+		static Object register(CodecMetrics metrics, String name) {
+			try{
+				final var n = new ObjectName("rs.igram.kiribi.io:type=CodecMetrics,name="+ObjectName.quote(name));
+				ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, n);
+				return n;
+			}catch(JMException e){
+				throw new IllegalStateException("Could not register "+name, e);
+			}
+		}
+		
+		static void unregister(Object name) {
+			try{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean((ObjectName)name);
+			}catch(JMException e){
+				// already unregistered
+			}
+		}
+	}
+}
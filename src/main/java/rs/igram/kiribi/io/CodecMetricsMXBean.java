@@ -0,0 +1,136 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.util.Map;
+
+/**
+ * Management interface of <code>CodecMetrics</code>, which is also the interface through
+ * which they are exposed as a JMX MXBean.
+ *
+ * @see CodecMetrics
+ * @author Michael Sargent
+ */
+public interface CodecMetricsMXBean {
+	/**
+	 * Returns the number of bytes read.
+	 *
+	 * @return The number of bytes read.
+	 */
+	long getBytesRead();
+	
+	/**
+	 * Returns the number of bytes written.
+	 *
+	 * @return The number of bytes written.
+	 */
+	long getBytesWritten();
+	
+	/**
+	 * Returns the number of <code>ByteStream</code> frames read.
+	 *
+	 * @return The number of frames read.
+	 */
+	long getFramesRead();
+	
+	/**
+	 * Returns the number of <code>ByteStream</code> frames written.
+	 *
+	 * @return The number of frames written.
+	 */
+	long getFramesWritten();
+	
+	/**
+	 * Returns the number of VarInts read and written in each size class, being those
+	 * encoded in 1, 3, 5 and 9 bytes respectively.
+	 *
+	 * @return The number of VarInts in each size class.
+	 */
+	long[] getVarIntSizes();
+	
+	/**
+	 * Returns the number of strings read and written.
+	 *
+	 * @return The number of strings read and written.
+	 */
+	long getStrings();
+	
+	/**
+	 * Returns the number of bytes in the strings read and written, excluding length
+	 * prefixes.
+	 *
+	 * @return The number of bytes in the strings read and written.
+	 */
+	long getStringBytes();
+	
+	/**
+	 * Returns the number of byte arrays read and written. <code>ByteStream</code> frames
+	 * are counted as frames rather than byte arrays.
+	 *
+	 * @return The number of byte arrays read and written.
+	 */
+	long getByteArrays();
+	
+	/**
+	 * Returns the number of bytes in the byte arrays read and written, excluding length
+	 * prefixes.
+	 *
+	 * @return The number of bytes in the byte arrays read and written.
+	 */
+	long getByteArrayBytes();
+	
+	/**
+	 * Returns the number of objects decoded, by class name.
+	 *
+	 * @return The number of objects decoded, by class name.
+	 */
+	Map<String,Long> getDecodes();
+	
+	/**
+	 * Returns the number of bytes decoded, by class name.
+	 *
+	 * @return The number of bytes decoded, by class name.
+	 */
+	Map<String,Long> getDecodedBytes();
+	
+	/**
+	 * Returns the number of objects encoded, by class name.
+	 *
+	 * @return The number of objects encoded, by class name.
+	 */
+	Map<String,Long> getEncodes();
+	
+	/**
+	 * Returns the number of bytes encoded, by class name.
+	 *
+	 * @return The number of bytes encoded, by class name.
+	 */
+	Map<String,Long> getEncodedBytes();
+	
+	/**
+	 * Resets all counters to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,193 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <code>ByteStream</code> decorator which deflates frames.
+ *
+ * <p>Each frame is prefixed with a flag byte. Frames shorter than the threshold, or
+ * which do not shrink, are sent raw after the flag; otherwise the flag is followed by 
+ * the VarInt length of the frame and its raw deflate data. Frames deflated with a preset
+ * dictionary carry its Adler-32 checksum after the flag, as zlib does, so that a frame is 
+ * not inflated with a different dictionary. Deflaters and inflaters are pooled across 
+ * streams, as they hold native buffers which are costly to allocate.</p>
+ *
+ * @see ByteStream#compressed(ByteStream, int, byte[])
+ * @author Michael Sargent
+ */
+class CompressedStream implements ByteStream {
+	static final byte RAW = 0;
+	static final byte DEFLATED = 1;
+	// deflated with the preset dictionary
+	static final byte DICTIONARY = 2;
+	// the deflate window, beyond which a dictionary is of no use
+	static final int MAX_DICTIONARY = 32 * 1024;
+	
+	private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+	private static final ArrayBlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+	private static final ArrayBlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+	
+	private final ByteStream stream;
+	private final int threshold;
+	private final byte[] dictionary;
+	// Adler-32 of the dictionary
+	private final int dictionaryId;
+	private final int maxFrameLength;
+	
+	CompressedStream(ByteStream stream, int threshold, byte[] dictionary, int maxFrameLength) {
+		this.stream = stream;
+		this.threshold = threshold;
+		this.dictionary = dictionary;
+		dictionaryId = dictionary == null ? 0 : adler(dictionary);
+		this.maxFrameLength = maxFrameLength;
+	}
+	
+	@Override
+	public void write(byte[] b) throws IOException {
+		// deflating a few bytes never pays for the length header
+		stream.write(b.length < threshold || b.length < 8 ? raw(b) : deflate(b));
+	}
+	
+	@Override
+	public byte[] read() throws IOException {
+		final var frame = stream.read();
+		if(frame.length == 0) throw new IOException("Empty frame");
+		switch(frame[0]) {
+		case RAW: 
+			return Arrays.copyOfRange(frame, 1, frame.length);
+		case DEFLATED:
+		case DICTIONARY:
+			return inflate(frame);
+		default:
+			throw new IOException("Unknown frame flag: "+frame[0]);
+		}
+	}
+	
+	@Override
+	public void cork() {
+		stream.cork();
+	}
+	
+	@Override
+	public void uncork() throws IOException {
+		stream.uncork();
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		stream.flush();
+	}
+	
+	private static byte[] raw(byte[] b) {
+		final var frame = new byte[b.length + 1];
+		frame[0] = RAW;
+		System.arraycopy(b, 0, frame, 1, b.length);
+		return frame;
+	}
+	
+	private byte[] deflate(byte[] b) throws IOException {
+		// no bigger than the raw frame, which is sent instead if the data doesn't fit
+		final var frame = new byte[b.length + 1];
+		final var buf = ByteBuffer.wrap(frame);
+		final var out = new ByteBufferVarOutput(buf);
+		if(dictionary == null){
+			out.writeByte(DEFLATED);
+		}else{
+			out.writeByte(DICTIONARY);
+			out.writeInt(dictionaryId);
+		}
+		out.writeVarInt(b.length);
+		final var offset = buf.position();
+		final var deflater = deflater();
+		try{
+			if(dictionary != null) deflater.setDictionary(dictionary);
+			deflater.setInput(b);
+			deflater.finish();
+			final var n = deflater.deflate(frame, offset, frame.length - offset);
+			return deflater.finished() ? Arrays.copyOf(frame, offset + n) : raw(b);
+		}finally{
+			release(deflater);
+		}
+	}
+	
+	private byte[] inflate(byte[] frame) throws IOException {
+		final var in = new ByteBufferVarInput(frame, 1, frame.length - 1);
+		if(frame[0] == DICTIONARY){
+			if(dictionary == null) throw new IOException("Frame requires a dictionary");
+			if(in.readInt() != dictionaryId) throw new IOException("Dictionary mismatch");
+		}
+		final var length = in.readVarInt();
+		if(length < 0 || length > maxFrameLength) throw new IOException("Invalid frame length: "+length);
+		final var offset = frame.length - in.remaining();
+		final var inflater = inflater();
+		try{
+			if(frame[0] == DICTIONARY) inflater.setDictionary(dictionary);
+			inflater.setInput(frame, offset, frame.length - offset);
+			final var b = new byte[length];
+			final var n = inflater.inflate(b);
+			if(n != length || !inflater.finished()) throw new IOException("Corrupt frame");
+			return b;
+		}catch(DataFormatException e){
+			throw new IOException("Corrupt frame", e);
+		}finally{
+			release(inflater);
+		}
+	}
+	
+	private static int adler(byte[] b) {
+		final var adler = new Adler32();
+		adler.update(b);
+		return (int)adler.getValue();
+	}
+	
+	private static Deflater deflater() {
+		final var d = DEFLATERS.poll();
+		return d == null ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : d;
+	}
+	
+	private static Inflater inflater() {
+		final var i = INFLATERS.poll();
+		return i == null ? new Inflater(true) : i;
+	}
+	
+	private static void release(Deflater d) {
+		d.reset();
+		if(!DEFLATERS.offer(d)) d.end();
+	}
+	
+	private static void release(Inflater i) {
+		i.reset();
+		if(!INFLATERS.offer(i)) i.end();
+	}
+}
@@ -0,0 +1,266 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+
+/**
+ * Implementation of VarOutput which counts the bytes written without storing them.
+ *
+ * <p>This is used to determine the exact encoded size of an <code>Encodable</code>
+ * object so that it can be written in a single pass into a buffer of the right size,
+ * or preceded by its length without being buffered at all.</p>
+ *
+ * @see Encodable#encodedSize
+ * @author Michael Sargent
+ */
+public class CountingVarOutput implements VarOutput {
+	private long count;
+	
+	/**
+	 * Initializes a newly created <code>CountingVarOutput</code> object.
+	 */
+	public CountingVarOutput() {}
+	
+	/**
+	 * Returns the number of bytes written.
+	 *
+	 * @return The number of bytes written.
+	 */
+	public long size() {
+		return count;
+	}
+	
+	/**
+	 * Resets the number of bytes written to zero.
+	 */
+	public void reset() {
+		count = 0;
+	}
+
+	@Override
+	public void write(int b) {
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b) {
+		count += b.length;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		count += len;
+	}
+
+	@Override
+	public void writeBoolean(boolean v) {
+		count++;
+	}
+
+	@Override
+	public void writeByte(int v) {
+		count++;
+	}
+
+	@Override
+	public void writeShort(int v) {
+		count += 2;
+	}
+
+	@Override
+	public void writeChar(int v) {
+		count += 2;
+	}
+
+	@Override
+	public void writeInt(int v) {
+		count += 4;
+	}
+
+	@Override
+	public void writeLong(long v) {
+		count += 8;
+	}
+
+	@Override
+	public void writeFloat(float v) {
+		count += 4;
+	}
+
+	@Override
+	public void writeDouble(double v) {
+		count += 8;
+	}
+
+	@Override
+	public void writeBytes(String s) {
+		count += s.length();
+	}
+
+	@Override
+	public void writeChars(String s) {
+		count += 2 * s.length();
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		count += 2 + ByteBufferVarOutput.utfLength(s);
+	}
+
+	@Override
+	public void writeVarChar(String s) {
+		count += ByteUtils.varIntSize(s.length()) + s.length();
+	}
+
+	@Override
+	public void writeString(String s) {
+		final var L = ByteUtils.utf8Length(s);
+		count += ByteUtils.varIntSize(L) + L;
+	}
+
+	@Override
+	public void writeBytes(byte[] b) {
+		count += 4 + b.length;
+	}
+
+	@Override
+	public void writeBytes(ByteBuffer b) {
+		count += 4 + b.remaining();
+	}
+
+	@Override
+	public void writeUInt8(long v) {
+		count++;
+	}
+
+	@Override
+	public void writeUInt16(long v) {
+		count += 2;
+	}
+
+	@Override
+	public void writeUInt32(long v) {
+		count += 4;
+	}
+
+	@Override
+	public void writeUInt64(long v) {
+		count += 8;
+	}
+
+	@Override
+	public void writeUInt16BE(long v) {
+		count += 2;
+	}
+
+	@Override
+	public void writeUInt32BE(long v) {
+		count += 4;
+	}
+
+	@Override
+	public void writeUInt64BE(long v) {
+		count += 8;
+	}
+
+	@Override
+	public void writeVarInt(long v) {
+		count += ByteUtils.varIntSize(v);
+	}
+
+	@Override
+	public void writeVarLong128(long v) {
+		count += ByteUtils.var128Size(v);
+	}
+
+	@Override
+	public void writeSignedVar(long v) {
+		count += ByteUtils.signedVarSize(v);
+	}
+
+	@Override
+	public void writeBigInteger(BigInteger value) {
+		// length of BigInteger.toByteArray()
+		count += 4 + value.bitLength() / 8 + 1;
+	}
+
+	@Override
+	public void writeSocketAddress(InetSocketAddress addr) {
+		count += 16 + 2;
+	}
+
+	@Override
+	public void writeAddress(InetSocketAddress addr) {
+		count += 4 + (addr.getAddress() instanceof Inet4Address ? 4 : 16) + 2;
+	}
+
+	@Override
+	public void writeLongs(Collection<Long> collection) {
+		writeVarInt(collection.size());
+		count += 8L * collection.size();
+	}
+
+	@Override
+	public void writeBytes(Collection<Byte> collection) {
+		writeVarInt(collection.size());
+		count += collection.size();
+	}
+
+	@Override
+	public void writeInts(Collection<Integer> collection) {
+		writeVarInt(collection.size());
+		count += 4L * collection.size();
+	}
+
+	@Override
+	public void writeLongs(long[] a) {
+		writeVarInt(a.length);
+		count += (long)Long.BYTES * a.length;
+	}
+
+	@Override
+	public void writeInts(int[] a) {
+		writeVarInt(a.length);
+		count += (long)Integer.BYTES * a.length;
+	}
+
+	@Override
+	public void writeShorts(short[] a) {
+		writeVarInt(a.length);
+		count += (long)Short.BYTES * a.length;
+	}
+
+	@Override
+	public void writeDoubles(double[] a) {
+		writeVarInt(a.length);
+		count += (long)Double.BYTES * a.length;
+	}
+}
@@ -26,6 +26,9 @@ package rs.igram.kiribi.io;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Functional interface used to decode encoded <code>Encodable</code> objects.
@@ -94,7 +97,10 @@ public interface Decoder<T> {
 	 * @throws IOException if there was a problem reading the data.
 	 */	
 	default T decode(byte[] b) throws IOException {
-		return read(new VarInputStream(b));
+		final var event = CodecEvents.begin(CodecEvents.DECODE);
+		final var t = read(new VarInputStream(b));
+		CodecEvents.commit(event, t == null ? null : t.getClass(), b.length);
+		return t;
 	}
 
 	/**
@@ -107,4 +113,51 @@ public interface Decoder<T> {
 	default T decodeUnchecked(byte[] b) {
 		return readUnchecked(new VarInputStream(b));
 	}
+
+	/**
+	 * Returns a sequential <code>Stream</code> of the objects decoded from the length 
+	 * prefixed frames, as written by <code>VarOutput.writeBytes()</code>, between the
+	 * buffer's position and limit. The buffer itself is not modified.
+	 * <p>The frames are indexed when this method is called and the stream splits on
+	 * frame boundaries, so it may be made parallel to decode the frames concurrently.
+	 * Problems decoding a frame are thrown by the stream as <code>UncheckedIOException</code>s.</p>
+	 *
+	 * @param frames The buffer containing the frames.
+	 * @return A stream of the decoded objects.
+	 * @throws IOException if the frames are malformed.
+	 */	
+	default Stream<T> stream(ByteBuffer frames) throws IOException {
+		return StreamSupport.stream(FrameSpliterator.of(frames, this), false);
+	}
+
+	/**
+	 * Returns a sequential <code>Stream</code> of the objects decoded from the length 
+	 * prefixed frames, as written by <code>VarOutput.writeBytes()</code>, remaining in
+	 * a <code>VarInput</code>. The input is consumed by the stream.
+	 * <p>Frames read from a <code>ByteBufferVarInput</code> or <code>MappedVarInput</code>
+	 * are indexed when this method is called, and the input moved to its end, so that the
+	 * stream can split on frame boundaries and decode the frames in parallel. Frames from 
+	 * other inputs are read as the stream is consumed. Problems decoding a frame are thrown 
+	 * by the stream as <code>UncheckedIOException</code>s.</p>
+	 *
+	 * @param in The <code>VarInput</code> to read from.
+	 * @return A stream of the decoded objects.
+	 * @throws IOException if the frames are malformed.
+	 * @see #stream(ByteBuffer)
+	 */	
+	default Stream<T> stream(VarInput in) throws IOException {
+		if(in instanceof ByteBufferVarInput){
+			final var buf = ((ByteBufferVarInput)in).buffer();
+			final var stream = stream(buf);
+			buf.position(buf.limit());
+			return stream;
+		}
+		if(in instanceof MappedVarInput){
+			final var mapped = (MappedVarInput)in;
+			final var spliterator = FrameSpliterator.of(mapped, this);
+			mapped.seek(mapped.size());
+			return StreamSupport.stream(spliterator, false);
+		}
+		return StreamSupport.stream(FrameSpliterator.sequential(in, this), false);
+	}
 }
\ No newline at end of file
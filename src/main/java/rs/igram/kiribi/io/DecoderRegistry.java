@@ -0,0 +1,115 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of <code>Decoder</code>s indexed by a small integer type tag, used by a
+ * <code>TaggedStream</code> to dispatch reads.
+ *
+ * <p>Decoders are held in a flat array indexed by tag, so dispatching a read is a single 
+ * array load. Tags should therefore be assigned densely from zero. The tag for a class
+ * is cached per class, making the lookup on writes similarly cheap.</p>
+ *
+ * <p>Registration is thread safe, but registries are intended to be populated before 
+ * the streams using them are opened.</p>
+ *
+ * @see TaggedStream
+ * @author Michael Sargent
+ */
+public final class DecoderRegistry {
+	/**
+	 * The largest tag which may be registered.
+	 */
+	public static final int MAX_TAG = 0xFFFF;
+	
+	private final Map<Class<?>,Integer> types = new HashMap<>();
+	private final ClassValue<Integer> tags = new ClassValue<>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			synchronized(types){
+				return types.getOrDefault(type, -1);
+			}
+		}
+	};
+	// copied on write
+	private volatile Decoder<?>[] decoders = new Decoder<?>[0];
+	
+	/**
+	 * Initializes a newly created <code>DecoderRegistry</code> object.
+	 */
+	public DecoderRegistry() {}
+	
+	/**
+	 * Registers a decoder for a type under the given tag.
+	 *
+	 * @param <T> The type decoded.
+	 * @param tag The tag, between 0 and <code>MAX_TAG</code>.
+	 * @param type The exact class of the objects written with this tag.
+	 * @param decoder The decoder for objects read with this tag.
+	 * @return This registry.
+	 * @throws IllegalArgumentException if the tag is out of range, or the tag or the type 
+	 * has already been registered.
+	 */
+	public <T> DecoderRegistry register(int tag, Class<T> type, Decoder<? extends T> decoder) {
+		if(tag < 0 || tag > MAX_TAG) throw new IllegalArgumentException("Invalid tag: "+tag);
+		synchronized(types){
+			var d = decoders;
+			if(tag < d.length && d[tag] != null) throw new IllegalArgumentException("Tag already registered: "+tag);
+			if(types.containsKey(type)) throw new IllegalArgumentException("Type already registered: "+type.getName());
+			if(tag >= d.length) d = Arrays.copyOf(d, tag + 1);
+			else d = d.clone();
+			d[tag] = decoder;
+			types.put(type, tag);
+			tags.remove(type);
+			decoders = d;
+		}
+		return this;
+	}
+	
+	/**
+	 * Returns the decoder registered under a tag.
+	 *
+	 * @param tag The tag.
+	 * @return The decoder registered under the tag, or <code>null</code> if there is none.
+	 */
+	public Decoder<?> decoder(int tag) {
+		final var d = decoders;
+		return tag >= 0 && tag < d.length ? d[tag] : null;
+	}
+	
+	/**
+	 * Returns the tag registered for a class.
+	 *
+	 * @param type The class.
+	 * @return The tag registered for the class, or <code>-1</code> if there is none.
+	 */
+	public int tag(Class<?> type) {
+		return tags.get(type);
+	}
+}
@@ -26,6 +26,7 @@ package rs.igram.kiribi.io;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 
 /**
  * Classes which wish to be encoded with this framework should implement this interface.
@@ -55,6 +56,23 @@ public interface Encodable {
 		}
 	}
 
+	/**
+	 * Returns the exact number of bytes this object's persistent data occupies
+	 * when encoded.
+	 * <p>The default implementation performs a sizing pass over {@link #write} with a
+	 * <code>CountingVarOutput</code>. Implementations which can compute their size
+	 * more cheaply may override this method.</p>
+	 *
+	 * @return The number of bytes this object's persistent data occupies when encoded.
+	 * @throws IOException if there was a problem sizing the data.
+	 * @see CountingVarOutput
+	 */
+	default int encodedSize() throws IOException {
+		final var out = new CountingVarOutput();
+		write(out);
+		return Math.toIntExact(out.size());
+	}
+
 	/**
 	 * Encodes this object's persistent data into a byte array.
 	 *
@@ -62,10 +80,35 @@ public interface Encodable {
 	 * @throws IOException if there was a problem writing the data.
 	 */
 	default byte[] encode() throws IOException {
-		try(VarOutputStream out = new VarOutputStream()){
+		final var event = CodecEvents.begin(CodecEvents.ENCODE);
+		try(var out = ByteArrayVarOutput.acquire()){
 			write(out);
-			return out.toByteArray();
+			final var b = out.toByteArray();
+			CodecEvents.commit(event, getClass(), b.length);
+			return b;
+		}
+	}
+
+	/**
+	 * Encodes this object's persistent data into the provided buffer, starting at
+	 * its current position.
+	 * <p>If there is insufficient space in the buffer its position is left unchanged.</p>
+	 *
+	 * @param dst The buffer to encode into.
+	 * @return The number of bytes written.
+	 * @throws IOException if there was a problem writing the data.
+	 */
+	default int encode(ByteBuffer dst) throws IOException {
+		final var event = CodecEvents.begin(CodecEvents.ENCODE);
+		final var p = dst.position();
+		try{
+			write(new ByteBufferVarOutput(dst));
+		}catch(IOException e){
+			dst.position(p);
+			throw e;
 		}
+		CodecEvents.commit(event, getClass(), dst.position() - p);
+		return dst.position() - p;
 	}
 
 
@@ -93,8 +136,10 @@ public interface Encodable {
 	 * @see Decoder
 	 */
 	default <T> T copy(Decoder<T> decoder) throws IOException {
-		try(VarInputStream in = new VarInputStream(encode())){
-			return decoder.read(in);
+		// decoded straight from the pooled buffer, which the copy must not share
+		try(var out = ByteArrayVarOutput.acquire()){
+			write(out);
+			return decoder.read(new ByteBufferVarInput(out.slice(), false));
 		}
 	}
 
@@ -108,8 +153,8 @@ public interface Encodable {
 	 * @see Decoder
 	 */
 	default <T> T copyUnchecked(Decoder<T> decoder) {
-		try(VarInputStream in = new VarInputStream(encode())){
-			return decoder.read(in);
+		try{
+			return copy(decoder);
 		}catch(IOException e){
 			throw new UncheckedIOException(e);
 		}
@@ -25,10 +25,11 @@
 package rs.igram.kiribi.io;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 public class EncodableBytes implements Encodable {
-	private final byte[] bytes;
+	// read-only, shared only when adopted from a view
+	private final ByteBuffer bytes;
    	   
 	/**
 	 * Initializes a newly created <code>EncodableBytes</code> object
@@ -37,7 +38,21 @@ public class EncodableBytes implements Encodable {
 	 * @param bytes The byte array to initialize from.
 	 */
    	public EncodableBytes(byte[] bytes) {
-   		this.bytes = ByteUtils.copy(bytes);
+   		this.bytes = ByteBuffer.wrap(ByteUtils.copy(bytes)).asReadOnlyBuffer();
+   	}
+   	
+	/**
+	 * Initializes a newly created <code>EncodableBytes</code> object
+	 * which adopts the remaining bytes of the provided buffer without copying them.
+	 * <p>
+	 * This is intended for use with {@link VarInput#readBytesView()} when forwarding
+	 * opaque payloads. The bytes must not be modified while this object is in use.
+	 * The position of the provided buffer is not changed.
+	 *
+	 * @param view The buffer whose remaining bytes are to be adopted.
+	 */
+   	public EncodableBytes(ByteBuffer view) {
+   		this.bytes = view.slice().asReadOnlyBuffer();
    	}
    	      	
 	/**
@@ -49,7 +64,7 @@ public class EncodableBytes implements Encodable {
 	 * <code>VarInputStream</code>.
 	 */
    	public EncodableBytes(VarInput in) throws IOException {
-   		bytes = in.readBytes();
+   		bytes = ByteBuffer.wrap(in.readBytes()).asReadOnlyBuffer();
    	}
    	  
    	/**
@@ -58,21 +73,42 @@ public class EncodableBytes implements Encodable {
 	 * @return A copy of the byte array.
 	 */
    	public byte[] bytes() {
-   		return ByteUtils.copy(bytes);
+   		final var b = new byte[bytes.remaining()];
+   		bytes.duplicate().get(b);
+   		return b;
+   	}
+   	  
+   	/**
+	 * Returns a read-only view of the bytes without copying them.
+	 *
+	 * @return A read-only view of the bytes.
+	 */
+   	public ByteBuffer view() {
+   		return bytes.duplicate();
    	}
    	
    	@Override
     public void write(VarOutput out) throws IOException {
     	out.writeBytes(bytes);
    	}
+   	
+   	@Override
+    public int encodedSize() {
+    	return 4 + bytes.remaining();
+   	}
    	   
    	@Override
-   	public int hashCode() {return Arrays.hashCode(bytes);}
+   	public int hashCode() {
+   		// consistent with Arrays.hashCode(byte[])
+   		var h = 1;
+   		for(int i = bytes.position(); i < bytes.limit(); i++) h = 31 * h + bytes.get(i);
+   		return h;
+   	}
    	
    	@Override   	
    	public boolean equals(Object o) {
    		if(o == null || !(o instanceof EncodableBytes)) return false;
    		var t = (EncodableBytes)o;
-   		return Arrays.equals(bytes, t.bytes);
+   		return bytes.equals(t.bytes);
    	}
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a record or class for which the <code>kiribi-io-processor</code> annotation
+ * processor generates a codec at compile time.
+ *
+ * <p>For an annotated type <code>Foo</code> the processor generates a final class 
+ * <code>FooCodec</code> in the same package (<code>Outer_InnerCodec</code> for nested types) 
+ * with the following static members:</p>
+ *
+ * <pre>
+ * public static void write(Foo value, VarOutput out) throws IOException
+ * public static Foo read(VarInput in) throws IOException
+ * public static Encodable encodable(Foo value)
+ * public static final Decoder&lt;Foo&gt; DECODER
+ * </pre>
+ *
+ * <p>The generated code writes each component of a record, or each non-static, 
+ * non-transient field of a class, in declaration order using the <code>VarOutput</code>
+ * and <code>VarInput</code> primitives, without reflection. Records are decoded with their
+ * canonical constructor. Classes must have a non-private no-arg constructor and their 
+ * encoded fields must be neither private nor final.</p>
+ *
+ * <p>Supported component types are primitives and their wrappers, <code>String</code>,
+ * <code>BigInteger</code>, <code>InetSocketAddress</code>, enums, arrays, other 
+ * <code>&#64;Encoded</code> types, <code>Encodable</code> types which provide a constructor 
+ * taking a <code>VarInput</code>, and <code>Collection</code> and <code>Map</code> types 
+ * of any of these. Values must not be <code>null</code>.</p>
+ *
+ * <p>Typically, this is used as follows:
+ *
+ * <pre>
+ * &#64;Encoded
+ * public record Foo(int id, String name, List&lt;InetSocketAddress&gt; peers) {}
+ *
+ * ....
+ *
+ * VarOutput out = ...
+ * FooCodec.write(foo, out);
+ *
+ * VarInput in = ...
+ * Foo foo = in.read(FooCodec.DECODER);
+ * </pre>
+ *
+ * @see Encodable
+ * @see Decoder
+ * @author Michael Sargent
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Encoded {}
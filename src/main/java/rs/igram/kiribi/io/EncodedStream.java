@@ -31,6 +31,7 @@ import java.io.IOException;
  *
  * @see Encodable
  * @see Decoder
+ * @see TaggedStream
  * @author Michael Sargent
  */
 public interface EncodedStream {	
@@ -0,0 +1,62 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+
+/**
+ * Callback interface to which a <code>FrameSelector</code> delivers complete frames.
+ *
+ * <p>Callbacks are invoked on the thread running the <code>FrameSelector</code> and
+ * should not block.</p>
+ *
+ * @see FrameSelector
+ * @author Michael Sargent
+ */
+@FunctionalInterface
+public interface FrameHandler {
+	/**
+	 * Invoked when a complete frame has been received.
+	 *
+	 * @param channel The channel on which the frame was received, which may be used
+	 * to write replies.
+	 * @param frame The frame received.
+	 * @throws IOException if there was a problem handling the frame, in which case
+	 * the channel is closed. The channel is also closed if a runtime exception is thrown,
+	 * with the exception wrapped in the <code>IOException</code> passed to 
+	 * {@link #closed}.
+	 */
+	void frame(FramedChannel channel, byte[] frame) throws IOException;
+	
+	/**
+	 * Invoked once when the channel has been closed. The default implementation does
+	 * nothing.
+	 *
+	 * @param channel The channel which has been closed.
+	 * @param cause The exception which caused the channel to be closed, or 
+	 * <code>null</code> if it was closed normally.
+	 */
+	default void closed(FramedChannel channel, IOException cause) {}
+}
@@ -0,0 +1,225 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Multiplexes any number of non-blocking <code>SocketChannel</code>s on a single thread,
+ * exchanging length prefixed frames.
+ *
+ * <p>A <code>FrameSelector</code> does nothing until {@link #run} is invoked, typically
+ * on a dedicated thread, which returns when the selector is closed.</p>
+ *
+ * <pre>
+ * var selector = new FrameSelector();
+ * new Thread(selector).start();
+ * selector.listen(server, (channel, frame) -&gt; channel.write(frame));
+ * </pre>
+ *
+ * @see FramedChannel
+ * @author Michael Sargent
+ */
+public class FrameSelector implements Runnable, Closeable {
+	/** The default maximum frame length accepted. */
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 1 << 24;
+	
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	
+	private final Selector selector;
+	private final int maxFrameLength;
+	private final ConcurrentLinkedQueue<Registration> pending = new ConcurrentLinkedQueue<>();
+	// shared by all channels, only accessed by the selector thread
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+	private volatile boolean closed;
+	
+	/**
+	 * Initializes a newly created <code>FrameSelector</code> object
+	 * accepting frames up to {@link #DEFAULT_MAX_FRAME_LENGTH} bytes.
+	 *
+	 * @throws IOException if there was a problem opening the selector.
+	 */
+	public FrameSelector() throws IOException {
+		this(DEFAULT_MAX_FRAME_LENGTH);
+	}
+	
+	/**
+	 * Initializes a newly created <code>FrameSelector</code> object.
+	 *
+	 * @param maxFrameLength The maximum frame length accepted, longer frames cause
+	 * the channel receiving them to be closed.
+	 * @throws IOException if there was a problem opening the selector.
+	 */
+	public FrameSelector(int maxFrameLength) throws IOException {
+		if(maxFrameLength < 0) throw new IllegalArgumentException("Invalid max frame length: "+maxFrameLength);
+		this.maxFrameLength = maxFrameLength;
+		selector = Selector.open();
+	}
+	
+	/**
+	 * Registers a connected channel with this selector. The channel is placed in 
+	 * non-blocking mode.
+	 *
+	 * @param channel The channel to register.
+	 * @param handler The handler frames received will be delivered to, or <code>null</code>
+	 * to queue frames to be taken with <code>FramedChannel.read()</code>.
+	 * @return The framed channel.
+	 * @throws IOException if there was a problem registering the channel.
+	 */
+	public FramedChannel register(SocketChannel channel, FrameHandler handler) throws IOException {
+		channel.configureBlocking(false);
+		final var framed = new FramedChannel(channel, handler, maxFrameLength);
+		submit(new Registration(framed, null, null));
+		return framed;
+	}
+	
+	/**
+	 * Registers a server channel with this selector, accepting connections which are
+	 * then registered with the given handler. The channel is placed in non-blocking mode.
+	 *
+	 * @param server The server channel to accept connections from.
+	 * @param handler The handler frames received on accepted connections will be delivered to.
+	 * @throws IOException if there was a problem registering the channel.
+	 */
+	public void listen(ServerSocketChannel server, FrameHandler handler) throws IOException {
+		if(handler == null) throw new NullPointerException("handler");
+		server.configureBlocking(false);
+		submit(new Registration(null, server, handler));
+	}
+	
+	/**
+	 * Runs the selection loop until this selector is closed.
+	 */
+	@Override
+	public void run() {
+		try{
+			while(!closed){
+				for(Registration r; (r = pending.poll()) != null;) r.register();
+				selector.select(this::process);
+			}
+		}catch(ClosedSelectorException e){
+			// closed
+		}catch(IOException e){
+			// fall through to shut down
+		}finally{
+			shutdown();
+		}
+	}
+	
+	/**
+	 * Closes this selector and all channels registered with it.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+	}
+	
+	private void submit(Registration r) throws IOException {
+		if(closed) throw new IOException("Selector closed");
+		pending.add(r);
+		selector.wakeup();
+	}
+	
+	private void process(SelectionKey key) {
+		final var attachment = key.attachment();
+		if(attachment instanceof FramedChannel){
+			final var framed = (FramedChannel)attachment;
+			try{
+				if(key.isValid() && key.isWritable()) framed.drain();
+				if(key.isValid() && key.isReadable()) framed.receive(buffer);
+			}catch(IOException e){
+				framed.close(e);
+			}catch(RuntimeException e){
+				// a faulty handler only loses its own channel
+				framed.close(new IOException(e));
+			}
+		}else if(key.isValid() && key.isAcceptable()){
+			final var handler = (FrameHandler)attachment;
+			try{
+				final var channel = ((ServerSocketChannel)key.channel()).accept();
+				if(channel == null) return;
+				channel.configureBlocking(false);
+				new FramedChannel(channel, handler, maxFrameLength).register(selector);
+			}catch(IOException e){
+				// leave the server registered
+			}
+		}
+	}
+	
+	private void shutdown() {
+		closed = true;
+		try{
+			for(var key : selector.keys()){
+				final var attachment = key.attachment();
+				if(attachment instanceof FramedChannel){
+					((FramedChannel)attachment).close();
+				}else{
+					key.cancel();
+				}
+			}
+		}catch(ClosedSelectorException e){
+			// already closed
+		}
+		for(Registration r; (r = pending.poll()) != null;) if(r.framed != null) r.framed.close();
+		try{
+			selector.close();
+		}catch(IOException e){
+			// ignore
+		}
+	}
+	
+	private final class Registration {
+		final FramedChannel framed;
+		final ServerSocketChannel server;
+		final FrameHandler handler;
+		
+		Registration(FramedChannel framed, ServerSocketChannel server, FrameHandler handler) {
+			this.framed = framed;
+			this.server = server;
+			this.handler = handler;
+		}
+		
+		void register() {
+			try{
+				if(framed != null){
+					framed.register(selector);
+				}else{
+					server.register(selector, SelectionKey.OP_ACCEPT, handler);
+				}
+			}catch(IOException e){
+				if(framed != null) framed.close(e);
+			}
+		}
+	}
+}
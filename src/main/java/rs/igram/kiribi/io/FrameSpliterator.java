@@ -0,0 +1,185 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a sequence of length prefixed frames, splitting on frame boundaries.
+ *
+ * <p>The frames are indexed up front by following their length headers, which
+ * touches only the headers, so the sequence can be split evenly and each frame 
+ * decoded independently from a view of its bytes.</p>
+ *
+ * @param <T> the type
+ * @see Decoder#stream(ByteBuffer)
+ * @author Michael Sargent
+ */
+final class FrameSpliterator<T> implements Spliterator<T> {
+	// frames are not split below this many
+	private static final int MIN_SPLIT = 16;
+	
+	// source of frame bytes which may be accessed concurrently
+	@FunctionalInterface
+	interface Frames {
+		ByteBuffer view(long position, int length) throws IOException;
+	}
+	
+	private final Frames frames;
+	// start of each frame followed by the end of the last
+	private final long[] index;
+	private final Decoder<T> decoder;
+	private int origin;
+	private final int fence;
+	
+	private FrameSpliterator(Frames frames, long[] index, int origin, int fence, Decoder<T> decoder) {
+		this.frames = frames;
+		this.index = index;
+		this.origin = origin;
+		this.fence = fence;
+		this.decoder = decoder;
+	}
+	
+	// frames from the buffer's position to its limit
+	static <T> FrameSpliterator<T> of(ByteBuffer buf, Decoder<T> decoder) throws IOException {
+		final var src = buf.asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN);
+		final var index = new Index();
+		long p = src.position();
+		final var limit = src.limit();
+		while(p < limit){
+			if(limit - p < 4) throw new IOException("Truncated frame at "+p);
+			final var L = src.getInt((int)p);
+			if(L < 0 || limit - p - 4 < L) throw new IOException("Invalid frame length at "+p+": "+L);
+			index.add(p);
+			p += 4 + L;
+		}
+		index.add(p);
+		final Frames frames = (position, length) -> 
+			src.duplicate().position((int)position).limit((int)position + length).slice();
+		return new FrameSpliterator<>(frames, index.a, 0, index.size - 1, decoder);
+	}
+	
+	// frames from the input's position to its end
+	static <T> FrameSpliterator<T> of(MappedVarInput in, Decoder<T> decoder) throws IOException {
+		final var index = new Index();
+		var p = in.position();
+		final var size = in.size();
+		while(p < size){
+			if(size - p < 4) throw new IOException("Truncated frame at "+p);
+			final var L = in.intAt(p);
+			if(L < 0 || size - p - 4 < L) throw new IOException("Invalid frame length at "+p+": "+L);
+			index.add(p);
+			p += 4 + L;
+		}
+		index.add(p);
+		return new FrameSpliterator<>(in::view, index.a, 0, index.size - 1, decoder);
+	}
+	
+	// frames read one at a time from an input which cannot be indexed, the 
+	// default batching of AbstractSpliterator provides what parallelism it can
+	static <T> Spliterator<T> sequential(VarInput in, Decoder<T> decoder) {
+		return new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, ORDERED) {
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				try{
+					final int b;
+					try{
+						b = in.readUnsignedByte();
+					}catch(EOFException e){
+						// end of the sequence
+						return false;
+					}
+					final var L = b << 24 | in.readUnsignedByte() << 16 | in.readUnsignedShort();
+					if(L < 0) throw new IOException("Invalid frame length: "+L);
+					final var frame = new byte[L];
+					in.readFully(frame);
+					action.accept(decoder.read(new ByteBufferVarInput(frame)));
+				}catch(IOException e){
+					throw new UncheckedIOException(e);
+				}
+				return true;
+			}
+		};
+	}
+	
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		if(origin >= fence) return false;
+		action.accept(decode(origin++));
+		return true;
+	}
+	
+	@Override
+	public void forEachRemaining(Consumer<? super T> action) {
+		while(origin < fence) action.accept(decode(origin++));
+	}
+	
+	@Override
+	public Spliterator<T> trySplit() {
+		final var lo = origin;
+		final var mid = (lo + fence) >>> 1;
+		if(mid - lo < MIN_SPLIT) return null;
+		origin = mid;
+		return new FrameSpliterator<>(frames, index, lo, mid, decoder);
+	}
+	
+	@Override
+	public long estimateSize() {
+		return fence - origin;
+	}
+	
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+	}
+	
+	private T decode(int i) {
+		final var start = index[i] + 4;
+		try{
+			return decoder.read(new ByteBufferVarInput(frames.view(start, (int)(index[i + 1] - start))));
+		}catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// growable array of frame offsets
+	private static final class Index {
+		long[] a = new long[64];
+		int size;
+		
+		void add(long offset) {
+			if(size == a.length) a = Arrays.copyOf(a, size * 2);
+			a[size++] = offset;
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A non-blocking <code>SocketChannel</code> registered with a <code>FrameSelector</code>.
+ *
+ * <p>Frames use the same length prefixed format as other <code>ByteStream</code>s.
+ * Writes never block: frames which cannot be written immediately are queued and 
+ * sent by the selector thread as the channel becomes writable. Byte arrays passed to
+ * {@link #write} must therefore not be modified afterwards.</p>
+ *
+ * <p>Frames received are delivered to the <code>FrameHandler</code> the channel was 
+ * registered with or, if there is none, queued to be taken with {@link #read}.</p>
+ *
+ * @see FrameSelector
+ * @author Michael Sargent
+ */
+public final class FramedChannel implements ByteStream, Closeable {
+	// marks the end of the received frames in queue mode
+	private static final Object CLOSED = new Object();
+	
+	private final SocketChannel channel;
+	private final FrameHandler handler;
+	private final int maxFrameLength;
+	private final BlockingQueue<Object> frames;
+	private volatile IOException cause;
+	
+	// inbound state, only accessed by the selector thread
+	private final ByteBuffer header = ByteBuffer.allocate(4);
+	private ByteBuffer body;
+	
+	// outbound state, guarded by outbound
+	private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+	private SelectionKey key;
+	private boolean closed;
+	
+	FramedChannel(SocketChannel channel, FrameHandler handler, int maxFrameLength) {
+		this.channel = channel;
+		this.handler = handler;
+		this.maxFrameLength = maxFrameLength;
+		frames = handler == null ? new LinkedBlockingQueue<>() : null;
+	}
+	
+	/**
+	 * Returns the underlying channel.
+	 *
+	 * @return The underlying channel.
+	 */
+	public SocketChannel channel() {
+		return channel;
+	}
+	
+	/**
+	 * Returns <code>true</code> if this channel has not been closed.
+	 *
+	 * @return <code>true</code> if this channel has not been closed.
+	 */
+	public boolean isOpen() {
+		synchronized(outbound){
+			return !closed;
+		}
+	}
+	
+	/**
+	 * Queues a frame to be written.
+	 *
+	 * @param b The frame to be written, which must not be modified afterwards.
+	 * @throws IOException if this channel has been closed or there was a problem writing
+	 * the frame.
+	 */
+	@Override
+	public void write(byte[] b) throws IOException {
+		final var event = CodecEvents.begin(CodecEvents.STREAM_WRITE);
+		queue(b);
+		CodecEvents.commit(event, getClass(), b.length);
+	}
+	
+	private void queue(byte[] b) throws IOException {
+		final var frame = new ByteBuffer[]{ByteBuffer.allocate(4).putInt(0, b.length), ByteBuffer.wrap(b)};
+		synchronized(outbound){
+			if(closed) throw new ClosedChannelException();
+			if(outbound.isEmpty()){
+				// nothing queued so try to write straight away
+				channel.write(frame);
+				if(!frame[1].hasRemaining() && !frame[0].hasRemaining()) return;
+			}
+			for(var buf : frame) if(buf.hasRemaining()) outbound.add(buf);
+			if(key != null){
+				key.interestOpsOr(SelectionKey.OP_WRITE);
+				key.selector().wakeup();
+			}
+		}
+	}
+	
+	/**
+	 * Takes the next frame received, blocking until one is available.
+	 *
+	 * @return The next frame received.
+	 * @throws EOFException if this channel has been closed and all frames have been taken.
+	 * @throws IllegalStateException if this channel delivers its frames to a <code>FrameHandler</code>.
+	 * @throws IOException if this channel was closed because of an error.
+	 */
+	@Override
+	public byte[] read() throws IOException {
+		if(frames == null) throw new IllegalStateException("Frames are delivered to a FrameHandler");
+		final var event = CodecEvents.begin(CodecEvents.STREAM_READ);
+		final var b = take();
+		CodecEvents.commit(event, getClass(), b.length);
+		return b;
+	}
+	
+	private byte[] take() throws IOException {
+		final Object frame;
+		try{
+			frame = frames.take();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		if(frame != CLOSED) return (byte[])frame;
+		// leave the marker for any other readers
+		frames.add(CLOSED);
+		final var e = cause;
+		throw e == null ? new EOFException() : new IOException(e);
+	}
+	
+	/**
+	 * Closes this channel, discarding any frames not yet written.
+	 */
+	@Override
+	public void close() {
+		close(null);
+	}
+	
+	// registers with the selector, called on the selector thread
+	void register(Selector selector) throws IOException {
+		synchronized(outbound){
+			if(closed) return;
+			final var ops = outbound.isEmpty() ? 
+				SelectionKey.OP_READ : 
+				SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+			key = channel.register(selector, ops, this);
+		}
+	}
+	
+	// reads whatever is available and delivers any complete frames, called on the selector thread
+	void receive(ByteBuffer buffer) throws IOException {
+		if(body != null && body.remaining() >= buffer.capacity()){
+			// large frames are read directly into their body
+			if(channel.read(body) < 0) throw new EOFException("Incomplete frame");
+			if(body.hasRemaining()) return;
+			final var frame = body.array();
+			body = null;
+			deliver(frame);
+			return;
+		}
+		if(channel.read(buffer.clear()) < 0){
+			if(body != null || header.position() > 0) throw new EOFException("Incomplete frame");
+			close(null);
+			return;
+		}
+		buffer.flip();
+		while(true){
+			if(body == null){
+				transfer(buffer, header);
+				if(header.hasRemaining()) return;
+				final var L = header.getInt(0);
+				if(L < 0 || L > maxFrameLength) throw new IOException("Invalid frame length: "+L);
+				header.clear();
+				body = ByteBuffer.allocate(L);
+			}
+			transfer(buffer, body);
+			if(body.hasRemaining()) return;
+			final var frame = body.array();
+			body = null;
+			deliver(frame);
+			if(!buffer.hasRemaining()) return;
+		}
+	}
+	
+	// writes as much of the queued frames as possible, called on the selector thread
+	void drain() throws IOException {
+		synchronized(outbound){
+			if(closed) return;
+			channel.write(outbound.toArray(new ByteBuffer[outbound.size()]));
+			while(!outbound.isEmpty() && !outbound.peek().hasRemaining()) outbound.poll();
+			if(outbound.isEmpty()) key.interestOpsAnd(~SelectionKey.OP_WRITE);
+		}
+	}
+	
+	void close(IOException cause) {
+		synchronized(outbound){
+			if(closed) return;
+			closed = true;
+			outbound.clear();
+			if(key != null) key.cancel();
+		}
+		try{
+			channel.close();
+		}catch(IOException e){
+			// ignore
+		}
+		this.cause = cause;
+		if(handler != null){
+			handler.closed(this, cause);
+		}else{
+			frames.add(CLOSED);
+		}
+	}
+	
+	private void deliver(byte[] frame) throws IOException {
+		if(handler != null){
+			handler.frame(this, frame);
+		}else{
+			frames.add(frame);
+		}
+	}
+	
+	private static void transfer(ByteBuffer src, ByteBuffer dst) {
+		final var n = Math.min(src.remaining(), dst.remaining());
+		final var limit = src.limit();
+		src.limit(src.position() + n);
+		dst.put(src);
+		src.limit(limit);
+	}
+}
@@ -0,0 +1,374 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Concrete implementation of VarInput which reads from a memory mapped file.
+ *
+ * <p>Files larger than a single mapping can address are mapped as a chain of 
+ * segments. Consecutive segments overlap by a few bytes so that fixed width values 
+ * are always read with a single positioned access; only byte arrays may span more
+ * than one segment. Reads start at {@link #position} which may be moved freely with 
+ * {@link #seek}.</p>
+ *
+ * <p>Closing a <code>MappedVarInput</code> releases its mappings for garbage 
+ * collection, the operating system unmaps the file once they have been collected.
+ * Views returned by {@link #readBytesView} remain valid until then.</p>
+ *
+ * @author Michael Sargent
+ */
+public class MappedVarInput implements VarInput, Closeable {
+	// 1 GB segments
+	private static final int SEGMENT_SHIFT = 30;
+	// overlap between consecutive segments - the widest fixed width value
+	private static final int OVERLAP = Long.BYTES;
+	
+	private final FileChannel channel;
+	private final boolean owner;
+	private final long size;
+	private final int shift;
+	private final long mask;
+	private ByteBuffer[] segments;
+	private long position;
+	
+	/**
+	 * Initializes a newly created <code>MappedVarInput</code> object
+	 * so that it reads the whole of the file at the provided path.
+	 *
+	 * @param path The path of the file to read.
+	 * @throws IOException if there was a problem opening or mapping the file.
+	 */
+	public MappedVarInput(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.READ), true);
+	}
+	
+	/**
+	 * Initializes a newly created <code>MappedVarInput</code> object
+	 * so that it reads a region of the provided channel. Closing this input
+	 * does not close the channel.
+	 *
+	 * @param channel The channel to read from.
+	 * @param offset The offset in the channel of the first byte to read.
+	 * @param size The number of bytes which may be read.
+	 * @throws IOException if there was a problem mapping the channel.
+	 * @throws IllegalArgumentException if the region is not within the channel.
+	 */
+	public MappedVarInput(FileChannel channel, long offset, long size) throws IOException {
+		this(channel, offset, size, SEGMENT_SHIFT, false);
+	}
+	
+	private MappedVarInput(FileChannel channel, boolean owner) throws IOException {
+		this(channel, 0, size(channel), SEGMENT_SHIFT, owner);
+	}
+	
+	// package private so tests can use small segments
+	MappedVarInput(FileChannel channel, long offset, long size, int shift, boolean owner) throws IOException {
+		this.channel = channel;
+		this.owner = owner;
+		this.size = size;
+		this.shift = shift;
+		mask = (1L << shift) - 1;
+		try{
+			if(offset < 0 || size < 0 || offset + size > channel.size()){
+				throw new IllegalArgumentException("Invalid region: "+offset+" "+size);
+			}
+			segments = map(channel, offset, size, shift);
+		}catch(IOException | RuntimeException e){
+			if(owner) channel.close();
+			throw e;
+		}
+	}
+	
+	private static long size(FileChannel channel) throws IOException {
+		try{
+			return channel.size();
+		}catch(IOException e){
+			channel.close();
+			throw e;
+		}
+	}
+	
+	private static ByteBuffer[] map(FileChannel channel, long offset, long size, int shift) throws IOException {
+		final var S = 1L << shift;
+		final var segments = new ByteBuffer[(int)((size + S - 1) >>> shift)];
+		for(int i = 0; i < segments.length; i++){
+			final var start = i * S;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, Math.min(S + OVERLAP, size - start));
+		}
+		return segments;
+	}
+	
+	/**
+	 * Returns the position of the next byte to be read.
+	 *
+	 * @return The position of the next byte to be read.
+	 */
+	public long position() {
+		return position;
+	}
+	
+	/**
+	 * Sets the position of the next byte to be read.
+	 *
+	 * @param position The new position.
+	 * @throws IllegalArgumentException if the position is negative or greater than the size.
+	 */
+	public void seek(long position) {
+		if(position < 0 || position > size) throw new IllegalArgumentException("Invalid position: "+position);
+		this.position = position;
+	}
+	
+	/**
+	 * Returns the number of bytes which may be read in total.
+	 *
+	 * @return The number of bytes which may be read in total.
+	 */
+	public long size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the number of bytes remaining to be read.
+	 *
+	 * @return The number of bytes remaining to be read.
+	 */
+	public long remaining() {
+		return size - position;
+	}
+	
+	/**
+	 * Releases the mappings and, if this input opened the file, closes it.
+	 *
+	 * @throws IOException if there was a problem closing the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		segments = null;
+		if(owner) channel.close();
+	}
+	
+	// returns the segment holding the next n bytes, n being at most OVERLAP
+	private ByteBuffer segment(int n) throws IOException {
+		if(segments == null) throw new ClosedChannelException();
+		if(size - position < n) throw new EOFException();
+		return segments[(int)(position >>> shift)];
+	}
+	
+	// returns the offset of the current position in its segment and advances it by n bytes
+	private int advance(int n) {
+		final var o = (int)(position & mask);
+		position += n;
+		return o;
+	}
+	
+	// returns a read only view of the length bytes at position, leaving the position
+	// unchanged, so may be called concurrently - the bytes must be within the input
+	ByteBuffer view(long position, int length) throws IOException {
+		final var segments = this.segments;
+		if(segments == null) throw new ClosedChannelException();
+		if(length == 0) return ByteBuffer.allocate(0).asReadOnlyBuffer();
+		final var segment = segments[(int)(position >>> shift)];
+		final var o = (int)(position & mask);
+		if(segment.limit() - o >= length) return segment.duplicate().position(o).limit(o + length).slice();
+		// spans segments
+		final var b = new byte[length];
+		for(int off = 0; off < length;){
+			final var next = segments[(int)(position >>> shift)];
+			final var n = Math.min(length - off, next.limit() - (int)(position & mask));
+			next.duplicate().position((int)(position & mask)).get(b, off, n);
+			position += n;
+			off += n;
+		}
+		return ByteBuffer.wrap(b).asReadOnlyBuffer();
+	}
+	
+	// returns the int at position, leaving the position unchanged
+	int intAt(long position) throws IOException {
+		final var segments = this.segments;
+		if(segments == null) throw new ClosedChannelException();
+		if(position < 0 || size - position < 4) throw new EOFException();
+		return segments[(int)(position >>> shift)].getInt((int)(position & mask));
+	}
+	
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		if(segments == null) throw new ClosedChannelException();
+		if(off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+		if(size - position < len) throw new EOFException();
+		while(len > 0){
+			// may span segments
+			final var segment = segments[(int)(position >>> shift)];
+			final var o = (int)(position & mask);
+			final var n = Math.min(len, segment.limit() - o);
+			segment.position(o).get(b, off, n);
+			position += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		final var k = (int)Math.max(0, Math.min(n, size - position));
+		position += k;
+		return k;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return segment(1).get(advance(1));
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return segment(2).getShort(advance(2));
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return (char)readShort();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return segment(4).getInt(advance(4));
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return segment(8).getLong(advance(8));
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		if(position == size) return null;
+		final var line = new StringBuilder();
+		while(position < size){
+			final var c = (char)readUnsignedByte();
+			if(c == '\n') break;
+			if(c == '\r'){
+				if(position < size && segment(1).get((int)(position & mask)) == '\n') position++;
+				break;
+			}
+			line.append(c);
+		}
+		return line.toString();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+	
+	@Override
+	public byte[] readBytes() throws IOException {
+		final var L = readInt();
+		if(L < 0) throw new IOException("Invalid length: "+L);
+		if(size - position < L) throw new EOFException();
+		final var b = new byte[L];
+		readFully(b);
+		return b;
+	}
+
+	@Override
+	public ByteBuffer readBytesView() throws IOException {
+		final var L = readInt();
+		if(L < 0) throw new IOException("Invalid length: "+L);
+		if(size - position < L) throw new EOFException();
+		final var view = view(position, L);
+		position += L;
+		return view;
+	}
+
+	@Override
+	public long readULong16() throws IOException {
+		return Short.reverseBytes(readShort()) & 0xFFFFL;
+	}
+
+	@Override
+	public long readULong32() throws IOException {
+		return Integer.reverseBytes(readInt()) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public long readULong64() throws IOException {
+		return Long.reverseBytes(readLong());
+	}
+
+	@Override
+	public int readUInt16BE() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public long readULong32BE() throws IOException {
+		return readInt() & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public long readULong64BE() throws IOException {
+		return readLong();
+	}
+}
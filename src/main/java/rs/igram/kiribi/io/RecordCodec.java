@@ -0,0 +1,429 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Runtime codec for Java records, for types which cannot be processed with the 
+ * <code>&#64;Encoded</code> annotation processor.
+ *
+ * <p>The first time a codec is requested for a record class its components are 
+ * introspected and a single composed <code>MethodHandle</code> is built for each of 
+ * writing and reading, which calls the component accessors, the <code>VarOutput</code> 
+ * and <code>VarInput</code> method for each component type and the canonical 
+ * constructor. Codecs are cached per class, so subsequent calls involve no reflection.</p>
+ *
+ * <p>Component types and their encoding are the same as for <code>&#64;Encoded</code>
+ * types, so a runtime codec and a generated codec for the same record are wire 
+ * compatible. Nested records are encoded with their own <code>RecordCodec</code>. 
+ * Values must not be <code>null</code>.</p>
+ *
+ * <p>Typically, this is used as follows:
+ *
+ * <pre>
+ * public record Foo(int id, String name, List&lt;InetSocketAddress&gt; peers) {}
+ *
+ * ....
+ *
+ * RecordCodec&lt;Foo&gt; codec = RecordCodec.of(Foo.class);
+ *
+ * VarOutput out = ...
+ * codec.write(foo, out);
+ *
+ * VarInput in = ...
+ * Foo foo = in.read(codec);
+ * </pre>
+ *
+ * @param <T> The record type.
+ * @see Encoded
+ * @author Michael Sargent
+ */
+public final class RecordCodec<T> implements Decoder<T> {
+	private static final ClassValue<RecordCodec<?>> CODECS = new ClassValue<>() {
+		@Override
+		protected RecordCodec<?> computeValue(Class<?> type) {
+			return new RecordCodec<>(type);
+		}
+	};
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodType WRITER = methodType(void.class, VarOutput.class, Object.class);
+	private static final MethodType READER = methodType(Object.class, VarInput.class);
+	
+	private final Class<T> type;
+	// (VarOutput, Object)void
+	private final MethodHandle writer;
+	// (VarInput)Object
+	private final MethodHandle reader;
+	
+	private RecordCodec(Class<T> type) {
+		this.type = type;
+		final var components = components(type);
+		final var types = new Class<?>[components.length];
+		var writer = MethodHandles.empty(WRITER);
+		var reader = (MethodHandle)null;
+		try{
+			// fold from the last component so the first is written and read first
+			for(int i = components.length - 1; i >= 0; i--){
+				final var c = components[i];
+				final var accessor = accessible((Method)invoke(c, "getAccessor"));
+				types[i] = accessor.getReturnType();
+				final var generic = accessor.getGenericReturnType();
+				final var w = MethodHandles.filterArguments(writer(types[i], generic), 1, 
+					LOOKUP.unreflect(accessor).asType(methodType(types[i], Object.class)));
+				writer = MethodHandles.foldArguments(writer, w);
+			}
+			final var constructor = accessible(type.getDeclaredConstructor(types));
+			reader = MethodHandles.dropArguments(LOOKUP.unreflectConstructor(constructor), types.length, VarInput.class);
+			for(int i = types.length - 1; i >= 0; i--){
+				final var generic = ((Method)invoke(components[i], "getAccessor")).getGenericReturnType();
+				reader = MethodHandles.foldArguments(reader, i, reader(types[i], generic));
+			}
+		}catch(ReflectiveOperationException e){
+			throw new IllegalArgumentException("Cannot build codec for "+type.getName(), e);
+		}
+		this.writer = writer.asType(WRITER);
+		this.reader = reader.asType(READER);
+	}
+	
+	/**
+	 * Returns the codec for a record class, building and caching it if necessary.
+	 *
+	 * @param <T> The record type.
+	 * @param type The record class.
+	 * @return The codec for the record class.
+	 * @throws IllegalArgumentException if the class is not a record, or has a component 
+	 * of an unsupported type.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> RecordCodec<T> of(Class<T> type) {
+		return (RecordCodec<T>)CODECS.get(type);
+	}
+	
+	/**
+	 * Returns the record class this codec encodes.
+	 *
+	 * @return The record class this codec encodes.
+	 */
+	public Class<T> type() {
+		return type;
+	}
+	
+	/**
+	 * Writes a record.
+	 *
+	 * @param value The record to write.
+	 * @param out The <code>VarOutput</code> to write to.
+	 * @throws IOException if there was a problem writing the data.
+	 */
+	public void write(T value, VarOutput out) throws IOException {
+		try{
+			writer.invokeExact(out, (Object)type.cast(value));
+		}catch(IOException | RuntimeException | Error e){
+			throw e;
+		}catch(Throwable t){
+			throw new IOException(t);
+		}
+	}
+	
+	@Override
+	public T read(VarInput in) throws IOException {
+		try{
+			return type.cast((Object)reader.invokeExact(in));
+		}catch(IOException | RuntimeException | Error e){
+			throw e;
+		}catch(Throwable t){
+			throw new IOException(t);
+		}
+	}
+	
+	/**
+	 * Returns an <code>Encodable</code> which writes the given record with this codec.
+	 *
+	 * @param value The record to encode.
+	 * @return An <code>Encodable</code> which writes the given record.
+	 */
+	public Encodable encodable(T value) {
+		return out -> write(value, out);
+	}
+	
+	// the record components of a class, found reflectively as this module targets Java 11
+	private static Object[] components(Class<?> type) {
+		try{
+			if(!(Boolean)invoke(type, "isRecord")) 
+				throw new IllegalArgumentException(type.getName()+" is not a record");
+			return (Object[])invoke(type, "getRecordComponents");
+		}catch(NoSuchMethodException e){
+			throw new IllegalArgumentException("Records are not supported by this runtime", e);
+		}catch(ReflectiveOperationException e){
+			throw new IllegalArgumentException(e);
+		}
+	}
+	
+	private static Object invoke(Object target, String name) throws ReflectiveOperationException {
+		return target.getClass().getMethod(name).invoke(target);
+	}
+	
+	private static <A extends AccessibleObject> A accessible(A member) {
+		if(!member.trySetAccessible()) throw new IllegalArgumentException(member+" is not accessible");
+		return member;
+	}
+	
+	// (VarOutput, type)void
+	private static MethodHandle writer(Class<?> type, Type generic) throws ReflectiveOperationException {
+		final var t = methodType(void.class, VarOutput.class, type);
+		if(type.isPrimitive() || isBoxed(type)){
+			final var p = MethodType.methodType(type).unwrap().returnType();
+			final var name = "write"+primitive(p);
+			final var arg = p == byte.class || p == short.class || p == char.class ? int.class : p;
+			return LOOKUP.findVirtual(VarOutput.class, name, methodType(void.class, arg)).asType(t);
+		}
+		if(type == String.class) return virtual("writeString", t, String.class);
+		if(type == BigInteger.class) return virtual("writeBigInteger", t, BigInteger.class);
+		if(type == InetSocketAddress.class) return virtual("writeSocketAddress", t, InetSocketAddress.class);
+		if(type == byte[].class) return virtual("writeBytes", t, byte[].class);
+		if(type == short[].class) return virtual("writeShorts", t, short[].class);
+		if(type == int[].class) return virtual("writeInts", t, int[].class);
+		if(type == long[].class) return virtual("writeLongs", t, long[].class);
+		if(type == double[].class) return virtual("writeDoubles", t, double[].class);
+		if(type.isEnum()) return virtual("writeEnum", t, Enum.class);
+		if(type.isArray()){
+			final var c = type.getComponentType();
+			final var e = writer(c, generic instanceof Class ? c : component(generic)).asType(WRITER);
+			return MethodHandles.insertArguments(helper("writeArray", MethodHandle.class, VarOutput.class, Object.class), 0, e).asType(t);
+		}
+		if(Map.class.isAssignableFrom(type)){
+			final var args = arguments(generic, 2);
+			final var k = writer(raw(args[0]), args[0]).asType(WRITER);
+			final var v = writer(raw(args[1]), args[1]).asType(WRITER);
+			return MethodHandles.insertArguments(helper("writeMap", MethodHandle.class, MethodHandle.class, VarOutput.class, Map.class), 0, k, v).asType(t);
+		}
+		if(Collection.class.isAssignableFrom(type)){
+			final var arg = arguments(generic, 1)[0];
+			final var e = writer(raw(arg), arg).asType(WRITER);
+			return MethodHandles.insertArguments(helper("writeCollection", MethodHandle.class, VarOutput.class, Collection.class), 0, e).asType(t);
+		}
+		if(Encodable.class.isAssignableFrom(type)) return virtual("write", t, Encodable.class);
+		if(isRecord(type)) return MethodHandles.insertArguments(helper("writeRecord", Class.class, VarOutput.class, Object.class), 0, type).asType(t);
+		throw new IllegalArgumentException("Unsupported type "+generic.getTypeName());
+	}
+	
+	// (VarInput)type
+	private static MethodHandle reader(Class<?> type, Type generic) throws ReflectiveOperationException {
+		final var t = methodType(type, VarInput.class);
+		if(type.isPrimitive() || isBoxed(type)){
+			final var p = MethodType.methodType(type).unwrap().returnType();
+			return LOOKUP.findVirtual(VarInput.class, "read"+primitive(p), methodType(p)).asType(t);
+		}
+		if(type == String.class) return virtual("readString", t);
+		if(type == BigInteger.class) return virtual("readBigInteger", t);
+		if(type == InetSocketAddress.class) return virtual("readSocketAddress", t);
+		if(type == byte[].class) return virtual("readBytes", t);
+		if(type == short[].class) return virtual("readShortArray", t);
+		if(type == int[].class) return virtual("readIntArray", t);
+		if(type == long[].class) return virtual("readLongArray", t);
+		if(type == double[].class) return virtual("readDoubleArray", t);
+		if(type.isEnum()){
+			final var h = LOOKUP.findVirtual(VarInput.class, "readEnum", methodType(Enum.class, Class.class));
+			return MethodHandles.insertArguments(h, 1, type).asType(t);
+		}
+		if(type.isArray()){
+			final var c = type.getComponentType();
+			final var e = reader(c, generic instanceof Class ? c : component(generic)).asType(READER);
+			return MethodHandles.insertArguments(helper("readArray", Class.class, MethodHandle.class, VarInput.class), 0, c, e).asType(t);
+		}
+		if(Map.class.isAssignableFrom(type)){
+			final var args = arguments(generic, 2);
+			final var k = reader(raw(args[0]), args[0]).asType(READER);
+			final var v = reader(raw(args[1]), args[1]).asType(READER);
+			return MethodHandles.insertArguments(helper("readMap", IntFunction.class, MethodHandle.class, MethodHandle.class, VarInput.class), 0, 
+				factory(type), k, v).asType(t);
+		}
+		if(Collection.class.isAssignableFrom(type)){
+			final var arg = arguments(generic, 1)[0];
+			final var e = reader(raw(arg), arg).asType(READER);
+			return MethodHandles.insertArguments(helper("readCollection", IntFunction.class, MethodHandle.class, VarInput.class), 0, 
+				factory(type), e).asType(t);
+		}
+		if(Encodable.class.isAssignableFrom(type)){
+			return LOOKUP.unreflectConstructor(accessible(type.getDeclaredConstructor(VarInput.class)));
+		}
+		if(isRecord(type)) return MethodHandles.insertArguments(helper("readRecord", Class.class, VarInput.class), 0, type).asType(t);
+		throw new IllegalArgumentException("Unsupported type "+generic.getTypeName());
+	}
+	
+	private static MethodHandle virtual(String name, MethodType t, Class<?>... params) throws ReflectiveOperationException {
+		final var owner = t.parameterType(0);
+		final var ret = owner == VarOutput.class ? void.class : t.returnType();
+		return LOOKUP.findVirtual(owner, name, methodType(ret, params)).asType(t);
+	}
+	
+	private static MethodHandle helper(String name, Class<?>... params) throws ReflectiveOperationException {
+		final var ret = params[params.length - 1] == VarInput.class ? Object.class : void.class;
+		return LOOKUP.findStatic(RecordCodec.class, name, methodType(ret, params));
+	}
+	
+	private static boolean isBoxed(Class<?> type) {
+		return MethodType.methodType(type).unwrap().returnType() != type;
+	}
+	
+	private static boolean isRecord(Class<?> type) throws ReflectiveOperationException {
+		try{
+			return (Boolean)invoke(type, "isRecord");
+		}catch(NoSuchMethodException e){
+			return false;
+		}
+	}
+	
+	private static String primitive(Class<?> p) {
+		final var name = p.getName();
+		return Character.toUpperCase(name.charAt(0))+name.substring(1);
+	}
+	
+	private static Type component(Type generic) {
+		return ((java.lang.reflect.GenericArrayType)generic).getGenericComponentType();
+	}
+	
+	private static Type[] arguments(Type generic, int count) {
+		if(!(generic instanceof ParameterizedType) || ((ParameterizedType)generic).getActualTypeArguments().length != count) 
+			throw new IllegalArgumentException("Unsupported type "+generic.getTypeName());
+		final var args = ((ParameterizedType)generic).getActualTypeArguments().clone();
+		for(int i = 0; i < count; i++){
+			if(args[i] instanceof WildcardType) args[i] = ((WildcardType)args[i]).getUpperBounds()[0];
+		}
+		return args;
+	}
+	
+	private static Class<?> raw(Type type) {
+		if(type instanceof Class) return (Class<?>)type;
+		if(type instanceof ParameterizedType) return (Class<?>)((ParameterizedType)type).getRawType();
+		if(type instanceof java.lang.reflect.GenericArrayType) return Array.newInstance(raw(component(type)), 0).getClass();
+		throw new IllegalArgumentException("Unsupported type "+type.getTypeName());
+	}
+	
+	// the implementation used for a collection or map type, as by the annotation processor
+	private static IntFunction<?> factory(Class<?> type) throws ReflectiveOperationException {
+		if(type == List.class || type == Collection.class) return ArrayList::new;
+		if(type == Set.class) return n -> new LinkedHashSet<>();
+		if(SortedSet.class.isAssignableFrom(type) && type.isInterface()) return n -> new TreeSet<>();
+		if(Queue.class.isAssignableFrom(type) && type.isInterface()) return ArrayDeque::new;
+		if(type == Map.class) return n -> new LinkedHashMap<>();
+		if(SortedMap.class.isAssignableFrom(type) && type.isInterface()) return n -> new TreeMap<>();
+		if(type.isInterface() || java.lang.reflect.Modifier.isAbstract(type.getModifiers())) 
+			throw new IllegalArgumentException("No implementation available for "+type.getName());
+		final var constructor = LOOKUP.unreflectConstructor(accessible(type.getDeclaredConstructor())).asType(methodType(Object.class));
+		return n -> {
+			try{
+				return constructor.invokeExact();
+			}catch(RuntimeException | Error e){
+				throw e;
+			}catch(Throwable t){
+				throw new IllegalStateException(t);
+			}
+		};
+	}
+	
+	private static void writeArray(MethodHandle e, VarOutput out, Object a) throws Throwable {
+		final var L = Array.getLength(a);
+		out.writeVarInt(L);
+		for(int i = 0; i < L; i++) e.invokeExact(out, Array.get(a, i));
+	}
+	
+	private static Object readArray(Class<?> c, MethodHandle e, VarInput in) throws Throwable {
+		final var a = Array.newInstance(c, in.readVarInt());
+		for(int i = 0, L = Array.getLength(a); i < L; i++) Array.set(a, i, (Object)e.invokeExact(in));
+		return a;
+	}
+	
+	private static void writeCollection(MethodHandle e, VarOutput out, Collection<?> c) throws Throwable {
+		out.writeVarInt(c.size());
+		for(Object v : c) e.invokeExact(out, v);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Object readCollection(IntFunction<?> factory, MethodHandle e, VarInput in) throws Throwable {
+		final var L = in.readVarInt();
+		final var c = (Collection<Object>)factory.apply(L);
+		for(int i = 0; i < L; i++) c.add((Object)e.invokeExact(in));
+		return c;
+	}
+	
+	private static void writeMap(MethodHandle k, MethodHandle v, VarOutput out, Map<?,?> m) throws Throwable {
+		out.writeVarInt(m.size());
+		for(var e : m.entrySet()){
+			k.invokeExact(out, (Object)e.getKey());
+			v.invokeExact(out, (Object)e.getValue());
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Object readMap(IntFunction<?> factory, MethodHandle k, MethodHandle v, VarInput in) throws Throwable {
+		final var L = in.readVarInt();
+		final var m = (Map<Object,Object>)factory.apply(L);
+		for(int i = 0; i < L; i++){
+			final var key = (Object)k.invokeExact(in);
+			m.put(key, (Object)v.invokeExact(in));
+		}
+		return m;
+	}
+	
+	// nested records are looked up when used so that recursive record types can be built
+	@SuppressWarnings("unchecked")
+	private static void writeRecord(Class<?> type, VarOutput out, Object value) throws IOException {
+		((RecordCodec<Object>)CODECS.get(type)).write(value, out);
+	}
+	
+	private static Object readRecord(Class<?> type, VarInput in) throws IOException {
+		return CODECS.get(type).read(in);
+	}
+}
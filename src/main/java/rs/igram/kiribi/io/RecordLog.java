@@ -0,0 +1,533 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32C;
+
+/**
+ * An append only log of encoded records stored as a sequence of segment files in
+ * a directory.
+ *
+ * <p>Each record is stored in the same length prefixed form written by 
+ * <code>VarOutput.writeBytes()</code> and is identified by its offset, the number
+ * of bytes appended to the log before it. Segment files are named after the offset
+ * of their first record and a new segment is started once the current one would 
+ * exceed the segment size.</p>
+ *
+ * <p>Appends are durable when they return. Concurrent appenders share the cost of
+ * forcing the log to storage: the first appender to wait becomes the leader and
+ * forces everything written so far, while those arriving in the meantime wait for
+ * the leader and are then either covered by its force or elect the next leader.</p>
+ *
+ * <p>Records may optionally be followed by a CRC32C checksum of their contents, 
+ * computed as they are encoded, which is verified whenever they are read. The top bit
+ * of the length prefix of such records is set, so logs may hold records with and
+ * without checksums.</p>
+ *
+ * <p>On opening, a record left incomplete at the end of the last segment by a 
+ * crash is discarded, as is any record from the first whose checksum does not 
+ * match.</p>
+ *
+ * <pre>
+ * try(var log = new RecordLog(dir)){
+ *     var offset = log.append(foo);
+ *     ...
+ *     for(var it = log.iterator(Foo::new); it.hasNext();){
+ *         Foo f = it.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Michael Sargent
+ */
+public class RecordLog implements Closeable {
+	/** The default segment size. */
+	public static final long DEFAULT_SEGMENT_SIZE = 1L << 26;
+	
+	private static final String SUFFIX = ".log";
+	// set in the length prefix of records followed by a checksum
+	private static final int CHECKED = 0x80000000;
+	
+	private final Path dir;
+	private final long segmentSize;
+	private final boolean checksums;
+	private final Object lock = new Object();
+	// all state below is guarded by lock
+	// offsets of the first record in each segment in ascending order
+	private final List<Long> bases = new ArrayList<>();
+	private FileChannel channel;
+	private long base;
+	private long written;
+	private long synced;
+	private boolean syncing;
+	private boolean closed;
+	private IOException failure;
+	
+	/**
+	 * Initializes a newly created <code>RecordLog</code> object using the
+	 * default segment size, creating the directory if required.
+	 *
+	 * @param dir The directory containing the log.
+	 * @throws IOException if there was a problem opening the log.
+	 */
+	public RecordLog(Path dir) throws IOException {
+		this(dir, DEFAULT_SEGMENT_SIZE);
+	}
+	
+	/**
+	 * Initializes a newly created <code>RecordLog</code> object, creating the
+	 * directory if required.
+	 *
+	 * @param dir The directory containing the log.
+	 * @param segmentSize The size segments are allowed to grow to before a new one
+	 * is started. A record larger than this occupies a segment on its own.
+	 * @throws IOException if there was a problem opening the log.
+	 */
+	public RecordLog(Path dir, long segmentSize) throws IOException {
+		this(dir, segmentSize, false);
+	}
+	
+	/**
+	 * Initializes a newly created <code>RecordLog</code> object, creating the
+	 * directory if required.
+	 *
+	 * @param dir The directory containing the log.
+	 * @param segmentSize The size segments are allowed to grow to before a new one
+	 * is started. A record larger than this occupies a segment on its own.
+	 * @param checksums Whether records appended are followed by a CRC32C checksum.
+	 * @throws IOException if there was a problem opening the log.
+	 */
+	public RecordLog(Path dir, long segmentSize, boolean checksums) throws IOException {
+		if(segmentSize < 1) throw new IllegalArgumentException("Invalid segment size: "+segmentSize);
+		this.dir = dir;
+		this.segmentSize = segmentSize;
+		this.checksums = checksums;
+		Files.createDirectories(dir);
+		try(var files = Files.newDirectoryStream(dir, "*"+SUFFIX)){
+			for(var file : files){
+				final var name = file.getFileName().toString();
+				try{
+					bases.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+				}catch(NumberFormatException e){
+					// not a segment
+				}
+			}
+		}
+		Collections.sort(bases);
+		if(bases.isEmpty()) bases.add(0L);
+		base = bases.get(bases.size() - 1);
+		channel = FileChannel.open(path(base), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try{
+			final var end = recover(channel);
+			channel.truncate(end).position(end);
+			written = synced = base + end;
+		}catch(IOException e){
+			channel.close();
+			throw e;
+		}
+	}
+	
+	// returns the end of the last complete record in a segment
+	private static long recover(FileChannel channel) throws IOException {
+		final var size = channel.size();
+		final var header = ByteBuffer.allocate(4);
+		var p = 0L;
+		while(size - p >= 4){
+			read(channel, header.clear(), p);
+			final var h = header.getInt(0);
+			final var L = h & ~CHECKED;
+			final var T = h < 0 ? 4 : 0;
+			if(size - p - 4 - T < L) break;
+			if(h < 0 && !verify(channel, p + 4, L)) break;
+			p += 4 + L + T;
+		}
+		return p;
+	}
+	
+	// checks the checksum following the record at position, reading it in chunks
+	private static boolean verify(FileChannel channel, long position, int length) throws IOException {
+		final var crc = new CRC32C();
+		final var buf = ByteBuffer.allocate(Math.min(length, 64 * 1024) + 4);
+		for(var n = 0; n < length;){
+			final var k = Math.min(length - n, buf.capacity() - 4);
+			read(channel, buf.clear().limit(k), position + n);
+			crc.update(buf.flip());
+			n += k;
+		}
+		read(channel, buf.clear().limit(4), position + length);
+		return (int)crc.getValue() == buf.getInt(0);
+	}
+	
+	private static void read(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+		while(dst.hasRemaining()){
+			final var n = channel.read(dst, position);
+			if(n < 0) throw new EOFException();
+			position += n;
+		}
+	}
+	
+	private Path path(long base) {
+		return dir.resolve(String.format("%020d", base) + SUFFIX);
+	}
+	
+	/**
+	 * Returns the offset at which the next record will be appended, which is also 
+	 * the total number of bytes appended to the log.
+	 *
+	 * @return The offset at which the next record will be appended.
+	 */
+	public long size() {
+		synchronized(lock){
+			return written;
+		}
+	}
+	
+	/**
+	 * Appends the encoded form of an <code>Encodable</code> object to the log,
+	 * returning once it is durable.
+	 *
+	 * @param e The object to append.
+	 * @return The offset of the record.
+	 * @throws IOException if there was a problem appending the record.
+	 */
+	public long append(Encodable e) throws IOException {
+		try(var out = ByteArrayVarOutput.acquire()){
+			// the length is patched in once known
+			out.writeInt(0);
+			if(checksums){
+				final var checked = new CheckedVarOutput(out);
+				e.write(checked);
+				out.writeInt(checked.checksum());
+			}else{
+				e.write(out);
+			}
+			final var frame = out.slice();
+			frame.putInt(0, checksums ? (frame.remaining() - 8) | CHECKED : frame.remaining() - 4);
+			return append(frame);
+		}
+	}
+	
+	/**
+	 * Appends a record to the log, returning once it is durable.
+	 *
+	 * @param record The record to append.
+	 * @return The offset of the record.
+	 * @throws IOException if there was a problem appending the record.
+	 */
+	public long append(byte[] record) throws IOException {
+		if(!checksums) return append(ByteBuffer.allocate(4).putInt(0, record.length), ByteBuffer.wrap(record));
+		final var crc = new CRC32C();
+		crc.update(record);
+		return append(ByteBuffer.allocate(4).putInt(0, record.length | CHECKED), ByteBuffer.wrap(record),
+			ByteBuffer.allocate(4).putInt(0, (int)crc.getValue()));
+	}
+	
+	private long append(ByteBuffer... frame) throws IOException {
+		var L = 0L;
+		for(var buf : frame) L += buf.remaining();
+		final long offset;
+		synchronized(lock){
+			check();
+			while(written > base && written - base + L > segmentSize){
+				if(syncing){
+					// the leader may still be forcing the current segment
+					await();
+					check();
+				}else{
+					roll();
+				}
+			}
+			try{
+				for(var n = 0L; n < L;) n += channel.write(frame);
+			}catch(IOException e){
+				// a partial record would corrupt those that follow it
+				failure = e;
+				throw e;
+			}
+			offset = written;
+			written += L;
+		}
+		sync(offset + L);
+		return offset;
+	}
+	
+	/**
+	 * Forces everything appended so far to storage. This is only needed when
+	 * records appended by <code>append()</code> calls still in progress in other
+	 * threads should be made durable sooner.
+	 *
+	 * @throws IOException if there was a problem forcing the log.
+	 */
+	public void sync() throws IOException {
+		sync(size());
+	}
+	
+	private void sync(long end) throws IOException {
+		final FileChannel leader;
+		final long target;
+		synchronized(lock){
+			while(true){
+				if(synced >= end) return;
+				check();
+				if(!syncing) break;
+				await();
+			}
+			syncing = true;
+			leader = channel;
+			target = written;
+		}
+		IOException failed = null;
+		try{
+			leader.force(false);
+		}catch(IOException e){
+			failed = e;
+			throw e;
+		}finally{
+			synchronized(lock){
+				syncing = false;
+				if(failed == null){
+					synced = Math.max(synced, target);
+				}else{
+					failure = failed;
+				}
+				lock.notifyAll();
+			}
+		}
+	}
+	
+	// starts a new segment, called holding lock while not syncing
+	private void roll() throws IOException {
+		try{
+			channel.force(false);
+			channel.close();
+			synced = written;
+			base = written;
+			channel = FileChannel.open(path(base), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			bases.add(base);
+		}catch(IOException e){
+			failure = e;
+			throw e;
+		}
+		// make the new file itself durable where the platform allows it
+		try(var d = FileChannel.open(dir, StandardOpenOption.READ)){
+			d.force(true);
+		}catch(IOException e){
+			// not supported
+		}
+	}
+	
+	private void check() throws IOException {
+		if(failure != null) throw new IOException("Log failed", failure);
+		if(closed) throw new IOException("Log closed");
+	}
+	
+	private void await() throws IOException {
+		try{
+			lock.wait();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+	
+	/**
+	 * Reads the record at the provided offset.
+	 *
+	 * @param <T> The type of the record.
+	 * @param offset The offset of the record, as returned by <code>append()</code>.
+	 * @param decoder The <code>Decoder</code> for the record.
+	 * @return The record.
+	 * @throws IOException if there was a problem reading the record.
+	 * @throws IllegalArgumentException if the offset is not within the log.
+	 */
+	public <T> T read(long offset, Decoder<T> decoder) throws IOException {
+		final long start, end;
+		synchronized(lock){
+			if(offset < bases.get(0) || offset >= written) throw new IllegalArgumentException("Invalid offset: "+offset);
+			start = bases.get(segment(offset));
+			end = written;
+		}
+		try(var ch = FileChannel.open(path(start), StandardOpenOption.READ)){
+			final var header = ByteBuffer.allocate(4);
+			read(ch, header, offset - start);
+			final var h = header.getInt(0);
+			final var L = h & ~CHECKED;
+			final var T = h < 0 ? 4 : 0;
+			if(L > end - offset - 4 - T) throw new IOException("Invalid length: "+L);
+			final var record = ByteBuffer.allocate(L + T);
+			read(ch, record, offset - start + 4);
+			record.flip();
+			if(h < 0){
+				final var checksum = record.getInt(L);
+				final var crc = new CRC32C();
+				crc.update(record.limit(L).duplicate());
+				if((int)crc.getValue() != checksum) throw new IOException("Checksum mismatch at offset "+offset);
+			}
+			return decoder.read(new ByteBufferVarInput(record));
+		}
+	}
+	
+	/**
+	 * Returns an iterator over the records in the log, decoding each with the 
+	 * provided <code>Decoder</code>. The iterator covers the records appended before
+	 * it was created.
+	 *
+	 * @param <T> The type of the records.
+	 * @param decoder The <code>Decoder</code> for the records.
+	 * @return An iterator over the records in the log.
+	 */
+	public <T> Iterator<T> iterator(Decoder<T> decoder) {
+		synchronized(lock){
+			return iterator(bases.get(0), decoder);
+		}
+	}
+	
+	/**
+	 * Returns an iterator over the records in the log, starting from the record at the
+	 * provided offset, decoding each with the provided <code>Decoder</code>. The 
+	 * iterator covers the records appended before it was created.
+	 * <p>The iterator's methods throw <code>UncheckedIOException</code> if there is
+	 * a problem reading a record.</p>
+	 *
+	 * @param <T> The type of the records.
+	 * @param offset The offset of the first record, as returned by <code>append()</code>.
+	 * @param decoder The <code>Decoder</code> for the records.
+	 * @return An iterator over the records in the log.
+	 * @throws IllegalArgumentException if the offset is not within the log.
+	 */
+	public <T> Iterator<T> iterator(long offset, Decoder<T> decoder) {
+		synchronized(lock){
+			if(offset < bases.get(0) || offset > written) throw new IllegalArgumentException("Invalid offset: "+offset);
+			final var first = segment(offset);
+			final var segments = new long[bases.size() - first + 1];
+			for(int i = first; i < bases.size(); i++) segments[i - first] = bases.get(i);
+			segments[segments.length - 1] = written;
+			return new RecordIterator<>(segments, offset, decoder);
+		}
+	}
+	
+	// returns the index of the segment containing offset, called holding lock
+	private int segment(long offset) {
+		final var i = Collections.binarySearch(bases, offset);
+		return i >= 0 ? i : -i - 2;
+	}
+	
+	/**
+	 * Forces the log to storage and closes it. Appends waiting for a force 
+	 * complete normally.
+	 *
+	 * @throws IOException if there was a problem closing the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(lock){
+			if(closed) return;
+			while(syncing) await();
+			closed = true;
+			try{
+				if(failure == null){
+					channel.force(false);
+					synced = written;
+				}
+			}finally{
+				channel.close();
+				lock.notifyAll();
+			}
+		}
+	}
+	
+	// iterates over consecutive segments, each mapped only up to the records it covers
+	private final class RecordIterator<T> implements Iterator<T> {
+		// segment offsets followed by the end of the last record covered
+		private final long[] segments;
+		private final Decoder<T> decoder;
+		private long offset;
+		private int index;
+		private MappedVarInput in;
+		
+		RecordIterator(long[] segments, long offset, Decoder<T> decoder) {
+			this.segments = segments;
+			this.offset = offset;
+			this.decoder = decoder;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			try{
+				while(in == null || in.remaining() == 0){
+					if(index == segments.length - 1) return false;
+					final var start = segments[index];
+					final var end = segments[++index];
+					// the mapping remains valid once the channel is closed
+					try(var ch = FileChannel.open(path(start), StandardOpenOption.READ)){
+						in = new MappedVarInput(ch, 0, end - start);
+					}
+					if(offset > start) in.seek(offset - start);
+				}
+				return true;
+			}catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		@Override
+		public T next() {
+			if(!hasNext()) throw new NoSuchElementException();
+			try{
+				final var h = in.readInt();
+				final var L = h & ~CHECKED;
+				final var p = in.position();
+				if(in.remaining() < L + (h < 0 ? 4 : 0)) throw new EOFException();
+				final var record = in.view(p, L);
+				in.seek(p + L);
+				if(h < 0){
+					final var crc = new CRC32C();
+					crc.update(record.duplicate());
+					if((int)crc.getValue() != in.readInt()) 
+						throw new IOException("Checksum mismatch at offset "+(segments[index - 1] + p - 4));
+				}
+				return decoder.read(new ByteBufferVarInput(record));
+			}catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+
+/**
+ * An <code>EncodedStream</code> which prefixes each <code>Encodable</code> with a VarInt
+ * type tag, allowing many message types to be multiplexed over one <code>ByteStream</code>.
+ *
+ * <p>Each object is written as a single frame of the underlying stream holding the tag 
+ * followed by the object's persistent data. Objects read with {@link #read()} are decoded 
+ * with the decoder registered for their tag.</p>
+ *
+ * <p>Typically, this is used as follows:
+ *
+ * <pre>
+ * DecoderRegistry registry = new DecoderRegistry()
+ *     .register(0, Ping.class, Ping::new)
+ *     .register(1, Peers.class, Peers::new);
+ *
+ * TaggedStream stream = new TaggedStream(ByteStream.stream(channel), registry);
+ * stream.write(new Ping());
+ * ....
+ * Object msg = stream.read();
+ * </pre>
+ *
+ * @see DecoderRegistry
+ * @see ByteStream
+ * @author Michael Sargent
+ */
+public final class TaggedStream implements EncodedStream {
+	private final ByteStream stream;
+	private final DecoderRegistry registry;
+	
+	/**
+	 * Creates a new <code>TaggedStream</code>.
+	 *
+	 * @param stream The underlying stream of frames.
+	 * @param registry The registry of types and decoders.
+	 */
+	public TaggedStream(ByteStream stream, DecoderRegistry registry) {
+		this.stream = stream;
+		this.registry = registry;
+	}
+	
+	/**
+	 * Writes an encodable object prefixed with the tag registered for its class.
+	 *
+	 * @param data The encodable object to write.
+	 * @throws IOException if the class of the object is not registered or there was a 
+	 * problem writing the data.
+	 */
+	@Override
+	public void write(Encodable data) throws IOException {
+		final var tag = registry.tag(data.getClass());
+		if(tag < 0) throw new IOException("Unregistered type: "+data.getClass().getName());
+		stream.write(new Tagged(tag, data));
+	}
+	
+	/**
+	 * Writes an encodable object prefixed with the given tag.
+	 *
+	 * @param tag The tag to write.
+	 * @param data The encodable object to write.
+	 * @throws IOException if there was a problem writing the data.
+	 */
+	public void write(int tag, Encodable data) throws IOException {
+		if(tag < 0 || tag > DecoderRegistry.MAX_TAG) throw new IllegalArgumentException("Invalid tag: "+tag);
+		stream.write(new Tagged(tag, data));
+	}
+	
+	/**
+	 * Reads an encodable object, decoding it with the decoder registered for its tag.
+	 *
+	 * @return The decoded object.
+	 * @throws IOException if no decoder is registered for the tag read or there was a 
+	 * problem reading the data.
+	 */
+	public Object read() throws IOException {
+		final var in = new ByteBufferVarInput(stream.read());
+		final var tag = in.readVarInt();
+		final var decoder = registry.decoder(tag);
+		if(decoder == null) throw new IOException("Unknown tag: "+tag);
+		return decoder.read(in);
+	}
+	
+	/**
+	 * Reads an encodable object, skipping its tag and decoding it with the given decoder.
+	 * <p>
+	 * The tag is not checked, so the object is misread if the decoder does not match it.
+	 * Use {@link #read(int, Decoder)} to check the tag.
+	 *
+	 * @param <T> The type of the object to decode.
+	 * @param decoder The decoder used to decode the object.
+	 * @return The decoded object.
+	 * @throws IOException if there was a problem reading the data.
+	 */
+	@Override
+	public <T> T read(Decoder<T> decoder) throws IOException {
+		final var in = new ByteBufferVarInput(stream.read());
+		in.readVarInt();
+		return decoder.read(in);
+	}
+	
+	/**
+	 * Reads an encodable object with the given tag, decoding it with the given decoder.
+	 *
+	 * @param <T> The type of the object to decode.
+	 * @param tag The tag expected.
+	 * @param decoder The decoder used to decode the object.
+	 * @return The decoded object.
+	 * @throws IOException if the tag read is not the tag expected or there was a problem 
+	 * reading the data.
+	 */
+	public <T> T read(int tag, Decoder<T> decoder) throws IOException {
+		final var in = new ByteBufferVarInput(stream.read());
+		final var t = in.readVarInt();
+		if(t != tag) throw new IOException("Unexpected tag: "+t);
+		return decoder.read(in);
+	}
+	
+	/**
+	 * Returns the underlying stream, for instance to cork it while writing a burst of 
+	 * objects.
+	 *
+	 * @return The underlying stream.
+	 */
+	public ByteStream stream() {
+		return stream;
+	}
+	
+	// prefixes the object's data with its tag
+	private static final class Tagged implements Encodable {
+		private final int tag;
+		private final Encodable data;
+		
+		Tagged(int tag, Encodable data) {
+			this.tag = tag;
+			this.data = data;
+		}
+		
+		@Override
+		public void write(VarOutput out) throws IOException {
+			out.writeVarInt(tag);
+			data.write(out);
+		}
+		
+		@Override
+		public int encodedSize() throws IOException {
+			return ByteUtils.varIntSize(tag) + data.encodedSize();
+		}
+	}
+}
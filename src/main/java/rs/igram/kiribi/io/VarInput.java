@@ -27,17 +27,13 @@ package rs.igram.kiribi.io;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.IOException;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Defines methods to read <code>Encodable</code> objects.
@@ -54,7 +50,21 @@ public interface VarInput extends DataInput {
 	 * @return A new <code>VarInput</code>.
 	 */
 	default VarInput wrap(final DataInput inner) {
-		return InputWrapper.wrap(inner);
+		return InputWrapper.adapt(inner);
+	}
+
+	/**
+	 * Adapts a <code>DataInput</code> as a <code>VarInput</code>.
+	 * <p>
+	 * The returned <code>VarInput</code> will delegate to the provided <code>DataInput</code>,
+	 * propagating any <code>IOException</code> it throws. If the provided <code>DataInput</code>
+	 * is already a <code>VarInput</code> it is returned as is.
+	 *
+	 * @param inner The <code>DataInput</code> to delegate to.
+	 * @return A <code>VarInput</code> which delegates to the provided <code>DataInput</code>.
+	 */
+	static VarInput of(DataInput inner) {
+		return InputWrapper.adapt(inner);
 	}
 
 	/**
@@ -70,6 +80,21 @@ public interface VarInput extends DataInput {
     	if(L > 0) readFully(b);
     	return b;
     }
+
+	/**
+	 * Reads a byte array as a read-only <code>ByteBuffer</code>.
+	 * <p>
+	 * Buffer-backed implementations return a view sharing the bytes of the source 
+	 * without copying them, which remains valid only as long as the source is not
+	 * modified. The default implementation wraps the result of {@link #readBytes()}.
+	 *
+	 * @return A read-only buffer containing the byte array read.
+	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeBytes(ByteBuffer)
+	 */
+	default ByteBuffer readBytesView() throws IOException {
+		return ByteBuffer.wrap(readBytes()).asReadOnlyBuffer();
+	}
 /*    
     default byte[] readBytes(int length) throws IOException {
     	byte[] b = new byte[length];
@@ -244,6 +269,35 @@ public interface VarInput extends DataInput {
 		}
 	}
 
+	/**
+	 * Reads an unsigned LEB128 VarLong as a <code>long</code>.
+	 *
+	 * @return An unsigned LEB128 VarLong read as a <code>long</code>.
+	 * @throws IOException if there was a problem reading the data or the VarLong is
+	 * longer than ten bytes.
+	 * @see VarOutput#writeVarLong128
+	 */
+	default long readVarLong128() throws IOException {
+		var v = 0L;
+		for(int shift = 0; shift < 64; shift += 7){
+			final var b = readByte();
+			v |= (b & 0x7FL) << shift;
+			if(b >= 0) return v;
+		}
+		throw new IOException("Malformed VarLong128");
+	}
+
+	/**
+	 * Reads a signed ZigZag VarLong as a <code>long</code>.
+	 *
+	 * @return A signed ZigZag VarLong read as a <code>long</code>.
+	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeSignedVar
+	 */
+	default long readSignedVar() throws IOException {
+		return ByteUtils.unZigZag(readVarLong128());
+	}
+
 	/**
 	 * Reads a <code>BigInteger</code>.
 	 * @return Reads a <code>BigInteger</code>.
@@ -276,39 +330,53 @@ public interface VarInput extends DataInput {
 	 * @see VarOutput#writeAddress
 	 */
 	default InetSocketAddress readSocketAddress() throws IOException {		
-		// first 12 bytes of inet address. If this equals IPV4 then its an IPV4 address and only use last 4 bytes.
-		// Otherwise its an IPV6 address and concat the first 12 bytes and last 4 bytes
-		final var a = new byte[12];
-		readFully(a);
-		// last 4 bytes of inet address
-		final var b = new byte[4];
-		readFully(b);
+		// 16 byte IPv6 or IPv4-mapped address read in place
+		final var hi = readLong();
+		final var lo = readLong();
+		return AddressCache.decode(hi, lo, readUInt16BE());
+	}
 
-		// null ?
-		if(Arrays.equals(new byte[16], concat(a, b))) throw new IOException("Invalid address: null");
-			
-		final var ipv4 = new byte[12];
-		ipv4[10] = (byte)0xff;
-		ipv4[11] = (byte)0xff;
-		
-		final var addr = Arrays.equals(a, ipv4) ?
-			InetAddress.getByAddress(b) :
-			InetAddress.getByAddress(concat(a, b));
-		final var port = readUInt16BE();
-		return new InetSocketAddress(addr, port);
+	/**
+	 * Reads a <code>InetSocketAddress</code>, returning the canonical instance held 
+	 * by the provided cache. Only the returned address is allocated, and only when
+	 * it is not already cached.
+	 *
+	 * @param cache The cache of canonical addresses.
+	 * @return Reads a <code>InetSocketAddress</code>.
+	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeSocketAddress
+	 */
+	default InetSocketAddress readSocketAddress(AddressCache cache) throws IOException {		
+		final var hi = readLong();
+		final var lo = readLong();
+		return cache.get(hi, lo, readUInt16BE());
 	}
 
 	/**
-	 * Reads a <code>String</code>.
+	 * Reads a Latin-1 <code>String</code> written as a VarInt length followed by one byte per char.
 	 *
 	 * @return Reads a <code>String</code>.
 	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeVarChar
 	 */
 	default String readVarChar() throws IOException {
-		final var buf = new StringBuilder();
-		final var l = readVarInt();
-		for(int i = 0; i < l; i++) buf.appendCodePoint(readByte()  & 0xFF);
-		return buf.toString();
+		final var b = new byte[readLength()];
+		readFully(b);
+		return new String(b, StandardCharsets.ISO_8859_1);
+	}
+	
+	/**
+	 * Reads a <code>String</code> written as a VarInt length followed by its standard
+	 * UTF-8 encoding.
+	 *
+	 * @return Reads a <code>String</code>.
+	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeString
+	 */
+	default String readString() throws IOException {
+		final var b = new byte[readLength()];
+		readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
 	}
 	
 	/**
@@ -402,6 +470,185 @@ public interface VarInput extends DataInput {
 		var L = readVarInt();
 		for(int i = 0; i < L; i++) collection.add(readInt());
 	}
+
+	/**
+	 * Reads an array of <code>long</code> values.
+	 *
+	 * @return The array of <code>long</code> values read.
+	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeLongs(long[])
+	 */
+	default long[] readLongArray() throws IOException {
+		final var a = new long[readLength()];
+		readFully(a, 0, a.length);
+		return a;
+	}
+	
+	/**
+	 * Reads an array of <code>long</code> values into the provided array.
+	 *
+	 * @param dst The array to read into, starting at index zero.
+	 * @return The number of <code>long</code> values read.
+	 * @throws IOException if there was a problem reading the data or the provided
+	 * array is too small.
+	 * @see VarOutput#writeLongs(long[])
+	 */
+	default int readLongs(long[] dst) throws IOException {
+		final var L = readLength();
+		if(L > dst.length) throw new IOException("Array too small: "+L+" > "+dst.length);
+		readFully(dst, 0, L);
+		return L;
+	}
+
+	/**
+	 * Reads an array of <code>int</code> values.
+	 *
+	 * @return The array of <code>int</code> values read.
+	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeInts(int[])
+	 */
+	default int[] readIntArray() throws IOException {
+		final var a = new int[readLength()];
+		readFully(a, 0, a.length);
+		return a;
+	}
+	
+	/**
+	 * Reads an array of <code>int</code> values into the provided array.
+	 *
+	 * @param dst The array to read into, starting at index zero.
+	 * @return The number of <code>int</code> values read.
+	 * @throws IOException if there was a problem reading the data or the provided
+	 * array is too small.
+	 * @see VarOutput#writeInts(int[])
+	 */
+	default int readInts(int[] dst) throws IOException {
+		final var L = readLength();
+		if(L > dst.length) throw new IOException("Array too small: "+L+" > "+dst.length);
+		readFully(dst, 0, L);
+		return L;
+	}
+
+	/**
+	 * Reads an array of <code>short</code> values.
+	 *
+	 * @return The array of <code>short</code> values read.
+	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeShorts(short[])
+	 */
+	default short[] readShortArray() throws IOException {
+		final var a = new short[readLength()];
+		readFully(a, 0, a.length);
+		return a;
+	}
+	
+	/**
+	 * Reads an array of <code>short</code> values into the provided array.
+	 *
+	 * @param dst The array to read into, starting at index zero.
+	 * @return The number of <code>short</code> values read.
+	 * @throws IOException if there was a problem reading the data or the provided
+	 * array is too small.
+	 * @see VarOutput#writeShorts(short[])
+	 */
+	default int readShorts(short[] dst) throws IOException {
+		final var L = readLength();
+		if(L > dst.length) throw new IOException("Array too small: "+L+" > "+dst.length);
+		readFully(dst, 0, L);
+		return L;
+	}
+
+	/**
+	 * Reads an array of <code>double</code> values.
+	 *
+	 * @return The array of <code>double</code> values read.
+	 * @throws IOException if there was a problem reading the data.
+	 * @see VarOutput#writeDoubles(double[])
+	 */
+	default double[] readDoubleArray() throws IOException {
+		final var a = new double[readLength()];
+		readFully(a, 0, a.length);
+		return a;
+	}
+	
+	/**
+	 * Reads an array of <code>double</code> values into the provided array.
+	 *
+	 * @param dst The array to read into, starting at index zero.
+	 * @return The number of <code>double</code> values read.
+	 * @throws IOException if there was a problem reading the data or the provided
+	 * array is too small.
+	 * @see VarOutput#writeDoubles(double[])
+	 */
+	default int readDoubles(double[] dst) throws IOException {
+		final var L = readLength();
+		if(L > dst.length) throw new IOException("Array too small: "+L+" > "+dst.length);
+		readFully(dst, 0, L);
+		return L;
+	}
+
+	// reads len big endian long values in bulk
+	private void readFully(long[] dst, int off, int len) throws IOException {
+		final var chunk = ByteBuffer.allocate(Math.min(len, 1024) * Long.BYTES);
+		final var view = chunk.asLongBuffer();
+		while(len > 0){
+			final var n = Math.min(len, view.capacity());
+			readFully(chunk.array(), 0, n * Long.BYTES);
+			view.clear();
+			view.get(dst, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	// reads len big endian int values in bulk
+	private void readFully(int[] dst, int off, int len) throws IOException {
+		final var chunk = ByteBuffer.allocate(Math.min(len, 1024) * Integer.BYTES);
+		final var view = chunk.asIntBuffer();
+		while(len > 0){
+			final var n = Math.min(len, view.capacity());
+			readFully(chunk.array(), 0, n * Integer.BYTES);
+			view.clear();
+			view.get(dst, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	// reads len big endian short values in bulk
+	private void readFully(short[] dst, int off, int len) throws IOException {
+		final var chunk = ByteBuffer.allocate(Math.min(len, 1024) * Short.BYTES);
+		final var view = chunk.asShortBuffer();
+		while(len > 0){
+			final var n = Math.min(len, view.capacity());
+			readFully(chunk.array(), 0, n * Short.BYTES);
+			view.clear();
+			view.get(dst, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	// reads len big endian double values in bulk
+	private void readFully(double[] dst, int off, int len) throws IOException {
+		final var chunk = ByteBuffer.allocate(Math.min(len, 1024) * Double.BYTES);
+		final var view = chunk.asDoubleBuffer();
+		while(len > 0){
+			final var n = Math.min(len, view.capacity());
+			readFully(chunk.array(), 0, n * Double.BYTES);
+			view.clear();
+			view.get(dst, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	// reads a VarInt array or string length
+	private int readLength() throws IOException {
+		final var L = readVarLong();
+		if(L < 0 || L > Integer.MAX_VALUE) throw new IOException("Invalid length: "+L);
+		return (int)L;
+	}
 /*	
 	default void readByteArrays(Collection<byte[]> collection, int l) throws IOException {
 		int L = readVarInt();
@@ -442,29 +689,119 @@ public interface VarInput extends DataInput {
 }
 
 // Wraps a DataInput instance into a VarInput instance
-class InputWrapper {
-	private static Set<Method> methods = new HashSet<>();
-	static {
-		for(Method m : DataInput.class.getDeclaredMethods()) methods.add(m);
+class InputWrapper implements VarInput {
+	private final DataInput inner;
+	
+	private InputWrapper(DataInput inner) {
+		this.inner = inner;
 	}
-	private InputWrapper(){}
 		
-	static VarInput wrap(final DataInput inner){
-		return (VarInput)Proxy.newProxyInstance(
-			VarInput.class.getClassLoader(),
-			new Class<?>[] {VarInput.class},
-            new InvocationHandler() {
-            	public Object invoke(Object proxy, Method method, Object[] args) {
-               		try{
-               			return methods.contains(method) ? 
-                           	method.invoke(inner, args) :
-                           method.invoke(proxy, args);
-                    }catch(Exception e){
-                       	e.printStackTrace();
-                       throw new RuntimeException(e);
-                    }
-                }
-            });
-        }
-    }
-    
+	static VarInput adapt(final DataInput inner) {
+		return inner instanceof VarInput ? (VarInput)inner : new InputWrapper(inner);
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		inner.readFully(b);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		inner.readFully(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		return inner.skipBytes(n);
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return inner.readBoolean();
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return inner.readByte();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return inner.readUnsignedByte();
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return inner.readShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return inner.readUnsignedShort();
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return inner.readChar();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return inner.readInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return inner.readLong();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return inner.readFloat();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return inner.readDouble();
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		return inner.readLine();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return inner.readUTF();
+	}
+
+	@Override
+	public long readULong16() throws IOException {
+		return Short.reverseBytes(inner.readShort()) & 0xFFFFL;
+	}
+
+	@Override
+	public long readULong32() throws IOException {
+		return Integer.reverseBytes(inner.readInt()) & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public long readULong64() throws IOException {
+		return Long.reverseBytes(inner.readLong());
+	}
+
+	@Override
+	public int readUInt16BE() throws IOException {
+		return inner.readUnsignedShort();
+	}
+
+	@Override
+	public long readULong32BE() throws IOException {
+		return inner.readInt() & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public long readULong64BE() throws IOException {
+		return inner.readLong();
+	}
+}
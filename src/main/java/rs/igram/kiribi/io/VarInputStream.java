@@ -26,6 +26,7 @@ package rs.igram.kiribi.io;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.FilterInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 
@@ -35,6 +36,11 @@ import java.io.IOException;
  * @author Michael Sargent
  */
 public class VarInputStream extends DataInputStream implements VarInput {
+	// null when not instrumented
+	final CodecMetrics metrics;
+	private final Metered metered;
+	private long published;
+	
 	/**
 	 * Initializes a newly created <code>VarInputStream</code> object
 	 * so that it reads from the provided <code>InputStream</code>.
@@ -43,6 +49,27 @@ public class VarInputStream extends DataInputStream implements VarInput {
 	 */
 	public VarInputStream(InputStream in) {
 		super(in);
+		metrics = null;
+		metered = null;
+	}
+	
+	/**
+	 * Initializes a newly created <code>VarInputStream</code> object
+	 * so that it reads from the provided <code>InputStream</code>, recording what it
+	 * reads in the provided <code>CodecMetrics</code>.
+	 *
+	 * @param in The input stream to read from.
+	 * @param metrics The metrics to record to.
+	 * @see CodecMetrics
+	 */
+	public VarInputStream(InputStream in, CodecMetrics metrics) {
+		this(new Metered(in), metrics);
+	}
+	
+	private VarInputStream(Metered in, CodecMetrics metrics) {
+		super(in);
+		this.metrics = metrics;
+		metered = in;
 	}
 	
 	/**
@@ -54,4 +81,87 @@ public class VarInputStream extends DataInputStream implements VarInput {
 	public VarInputStream(byte[] b) {
 		this(new ByteArrayInputStream(b));
 	}
+	
+	@Override
+	public long readVarLong() throws IOException {
+		final var v = VarInput.super.readVarLong();
+		if(metrics != null) metrics.varInt(v);
+		return v;
+	}
+	
+	@Override
+	public byte[] readBytes() throws IOException {
+		final var b = VarInput.super.readBytes();
+		if(metrics != null) metrics.byteArray(b.length);
+		publish();
+		return b;
+	}
+	
+	@Override
+	public String readString() throws IOException {
+		final var s = VarInput.super.readString();
+		if(metrics != null) metrics.string(ByteUtils.utf8Length(s));
+		return s;
+	}
+	
+	@Override
+	public String readVarChar() throws IOException {
+		final var s = VarInput.super.readVarChar();
+		if(metrics != null) metrics.string(s.length());
+		return s;
+	}
+	
+	@Override
+	public <T> T read(Decoder<T> decoder) throws IOException {
+		if(metrics == null) return decoder.read(this);
+		final var start = metered.count;
+		final var t = decoder.read(this);
+		if(t != null) metrics.decoded(t.getClass(), metered.count - start);
+		publish();
+		return t;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		publish();
+		super.close();
+	}
+	
+	// adds the bytes read since last published to the metrics
+	void publish() {
+		if(metrics == null) return;
+		final var n = metered.count;
+		metrics.bytesRead.add(n - published);
+		published = n;
+	}
+	
+	// counts the bytes read by this stream, which is its only reader
+	private static final class Metered extends FilterInputStream {
+		long count;
+		
+		Metered(InputStream in) {
+			super(in);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			final var b = in.read();
+			if(b >= 0) count++;
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			final var n = in.read(b, off, len);
+			if(n > 0) count += n;
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			final var k = in.skip(n);
+			count += k;
+			return k;
+		}
+	}
 }
@@ -26,15 +26,12 @@ package rs.igram.kiribi.io;
 
 import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.math.BigInteger;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * Defines methods to write <code>Encodable</code> objects.
@@ -52,7 +49,21 @@ public interface VarOutput extends DataOutput {
 	 * <code>DataOut</code>.
 	 */
 	default VarOutput wrap(final DataOutput inner) {
-		return OutputWrapper.wrap(inner);
+		return OutputWrapper.adapt(inner);
+	}
+
+	/**
+	 * Adapts a <code>DataOutput</code> as a <code>VarOutput</code>.
+	 * <p>
+	 * The returned <code>VarOutput</code> will delegate to the provided <code>DataOutput</code>,
+	 * propagating any <code>IOException</code> it throws. If the provided <code>DataOutput</code>
+	 * is already a <code>VarOutput</code> it is returned as is.
+	 *
+	 * @param inner The <code>DataOutput</code> to delegate to.
+	 * @return A <code>VarOutput</code> which delegates to the provided <code>DataOutput</code>.
+	 */
+	static VarOutput of(DataOutput inner) {
+		return OutputWrapper.adapt(inner);
 	}
 	
 	/**
@@ -67,6 +78,31 @@ public interface VarOutput extends DataOutput {
 		if(b.length > 0) write(b);
 	}
 	
+	/**
+	 * Writes the remaining bytes of a buffer as a byte array.
+	 * <p>
+	 * The position of the provided buffer is not changed.
+	 *
+	 * @param b The buffer containing the bytes to be written.
+	 * @throws IOException if there was a problem writing the data.
+	 * @see VarInput#readBytesView
+	 */
+	default void writeBytes(ByteBuffer b) throws IOException {
+		final var L = b.remaining();
+		writeInt(L);
+		if(b.hasArray()){
+			write(b.array(), b.arrayOffset() + b.position(), L);
+		}else{
+			final var src = b.duplicate();
+			final var chunk = new byte[Math.min(L, 8192)];
+			while(src.hasRemaining()){
+				final var n = Math.min(chunk.length, src.remaining());
+				src.get(chunk, 0, n);
+				write(chunk, 0, n);
+			}
+		}
+	}
+	
 	/**
 	 * Writes a long as a single unsigned <code>byte</code>.
 	 *
@@ -189,6 +225,41 @@ public interface VarOutput extends DataOutput {
 		}
 	}
 	
+	/**
+	 * Writes a long as an unsigned LEB128 VarLong.
+	 * <p>
+	 * Seven bits are written per byte, least significant group first, with the high 
+	 * bit of each byte set if more bytes follow. Values below 128 take one byte, 
+	 * values below 16384 two bytes, and negative values, treated as unsigned, ten bytes.
+	 *
+	 * @param v A long to be written as an unsigned LEB128 VarLong.
+	 * @throws IOException if there was a problem writing the data.
+	 * @see VarInput#readVarLong128
+	 * @see ByteUtils#var128Size
+	 */	
+	default void writeVarLong128(long v) throws IOException {
+		while((v & ~0x7FL) != 0){
+			write((int)((v & 0x7FL) | 0x80L));
+			v >>>= 7;
+		}
+		write((int)v);
+	}
+	
+	/**
+	 * Writes a long as a signed ZigZag VarLong.
+	 * <p>
+	 * The value is ZigZag encoded so that values of small magnitude, whether positive
+	 * or negative, take few bytes, and is then written as an unsigned LEB128 VarLong.
+	 *
+	 * @param v A long to be written as a signed ZigZag VarLong.
+	 * @throws IOException if there was a problem writing the data.
+	 * @see VarInput#readSignedVar
+	 * @see ByteUtils#zigZag
+	 */	
+	default void writeSignedVar(long v) throws IOException {
+		writeVarLong128(ByteUtils.zigZag(v));
+	}
+	
 	/**
 	 * Writes a <code>BigInteger</code>.
 	 *
@@ -215,6 +286,27 @@ public interface VarOutput extends DataOutput {
 		writeUInt16BE(addr.getPort());
 	}
 	
+	/**
+	 * Writes a <code>InetSocketAddress</code> as a 16 byte IPv6 address, IPv4 addresses
+	 * being IPv4-mapped, followed by a 2 byte port.
+	 *
+	 * @param addr A resolved <code>InetSocketAddress</code> to be written.
+	 * @throws IOException if the address is unresolved or there was a problem writing the data.
+	 * @see VarInput#readSocketAddress
+	 */			
+	default void writeSocketAddress(InetSocketAddress addr) throws IOException {	
+		final var inet = addr.getAddress();
+		if(inet == null) throw new IOException("Unresolved address: "+addr);
+		final var b = inet.getAddress();
+		if(b.length == 4){
+			writeLong(0);
+			writeLong(AddressCache.IPV4_MAPPED | (b[0] & 0xFFL) << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF));
+		}else{
+			write(b);
+		}
+		writeUInt16BE(addr.getPort());
+	}
+	
 	/**
 	 * Writes a <code>Encodable</code>.
 	 *
@@ -226,6 +318,35 @@ public interface VarOutput extends DataOutput {
 		encodable.write(this);
 	}
 	
+	/**
+	 * Writes a Latin-1 <code>String</code> as a VarInt length followed by one byte per char.
+	 *
+	 * @param s The <code>String</code> to be written.
+	 * @throws IOException if the string contains chars outside Latin-1 or there was a problem 
+	 * writing the data.
+	 * @see VarInput#readVarChar
+	 */		
+	default void writeVarChar(String s) throws IOException {
+		final var b = new byte[s.length()];
+		ByteUtils.encodeLatin1(s, b, 0);
+		writeVarInt(b.length);
+		write(b);
+	}
+	
+	/**
+	 * Writes a <code>String</code> as a VarInt length followed by its standard UTF-8 
+	 * encoding. Unlike <code>writeUTF</code> the length of the string is not limited.
+	 *
+	 * @param s The <code>String</code> to be written.
+	 * @throws IOException if there was a problem writing the data.
+	 * @see VarInput#readString
+	 */		
+	default void writeString(String s) throws IOException {
+		final var b = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(b.length);
+		write(b);
+	}
+	
 	/**
 	 * Writes a <code>Collection</code> of <code>Encodable</code> objects.
 	 *
@@ -301,6 +422,86 @@ public interface VarOutput extends DataOutput {
 		for(Integer v : collection) writeInt(v);
 	}
 	
+	/**
+	 * Writes an array of <code>long</code> values.
+	 *
+	 * @param a The array of <code>long</code> values to be written.
+	 * @throws IOException if there was a problem writing the data.
+	 * @see VarInput#readLongArray
+	 * @see VarInput#readLongs(long[])
+	 */		
+	default void writeLongs(long[] a) throws IOException {
+		writeVarInt(a.length);
+		final var chunk = ByteBuffer.allocate(Math.min(a.length, 1024) * Long.BYTES);
+		final var view = chunk.asLongBuffer();
+		for(int off = 0; off < a.length; off += view.capacity()){
+			final var n = Math.min(a.length - off, view.capacity());
+			view.clear();
+			view.put(a, off, n);
+			write(chunk.array(), 0, n * Long.BYTES);
+		}
+	}
+	
+	/**
+	 * Writes an array of <code>int</code> values.
+	 *
+	 * @param a The array of <code>int</code> values to be written.
+	 * @throws IOException if there was a problem writing the data.
+	 * @see VarInput#readIntArray
+	 * @see VarInput#readInts(int[])
+	 */		
+	default void writeInts(int[] a) throws IOException {
+		writeVarInt(a.length);
+		final var chunk = ByteBuffer.allocate(Math.min(a.length, 1024) * Integer.BYTES);
+		final var view = chunk.asIntBuffer();
+		for(int off = 0; off < a.length; off += view.capacity()){
+			final var n = Math.min(a.length - off, view.capacity());
+			view.clear();
+			view.put(a, off, n);
+			write(chunk.array(), 0, n * Integer.BYTES);
+		}
+	}
+	
+	/**
+	 * Writes an array of <code>short</code> values.
+	 *
+	 * @param a The array of <code>short</code> values to be written.
+	 * @throws IOException if there was a problem writing the data.
+	 * @see VarInput#readShortArray
+	 * @see VarInput#readShorts(short[])
+	 */		
+	default void writeShorts(short[] a) throws IOException {
+		writeVarInt(a.length);
+		final var chunk = ByteBuffer.allocate(Math.min(a.length, 1024) * Short.BYTES);
+		final var view = chunk.asShortBuffer();
+		for(int off = 0; off < a.length; off += view.capacity()){
+			final var n = Math.min(a.length - off, view.capacity());
+			view.clear();
+			view.put(a, off, n);
+			write(chunk.array(), 0, n * Short.BYTES);
+		}
+	}
+	
+	/**
+	 * Writes an array of <code>double</code> values.
+	 *
+	 * @param a The array of <code>double</code> values to be written.
+	 * @throws IOException if there was a problem writing the data.
+	 * @see VarInput#readDoubleArray
+	 * @see VarInput#readDoubles(double[])
+	 */		
+	default void writeDoubles(double[] a) throws IOException {
+		writeVarInt(a.length);
+		final var chunk = ByteBuffer.allocate(Math.min(a.length, 1024) * Double.BYTES);
+		final var view = chunk.asDoubleBuffer();
+		for(int off = 0; off < a.length; off += view.capacity()){
+			final var n = Math.min(a.length - off, view.capacity());
+			view.clear();
+			view.put(a, off, n);
+			write(chunk.array(), 0, n * Double.BYTES);
+		}
+	}
+	
 	/**
 	 * Writes a <code>Collection</code> of byte arrays.
 	 *
@@ -326,30 +527,114 @@ public interface VarOutput extends DataOutput {
 }
 
 // Wraps a DataOutput instance into a VarOutput instance
-class OutputWrapper {
-	private static Set<Method> methods = new HashSet<>();
-	static {
-		for(Method m : DataOutput.class.getDeclaredMethods()) methods.add(m);
-	}
+class OutputWrapper implements VarOutput {
+	private final DataOutput inner;
 	
-	private OutputWrapper(){}
+	private OutputWrapper(DataOutput inner) {
+		this.inner = inner;
+	}
 		
-	static VarOutput wrap(final DataOutput inner) {
-		return (VarOutput)Proxy.newProxyInstance(
-			VarOutput.class.getClassLoader(),
-			new Class<?>[] {VarOutput.class},               
-			new InvocationHandler() {
-				@Override
-                public Object invoke(Object proxy, Method method, Object[] args) {
-                	try{
-                		return methods.contains(method) ? 
-                           	method.invoke(inner, args) :
-                           	method.invoke(proxy, args);
-                    }catch(Exception e){
-                       	//e.printStackTrace();
-                        throw new RuntimeException(e);
-                    }
-                }
-        });
-    }
+	static VarOutput adapt(final DataOutput inner) {
+		return inner instanceof VarOutput ? (VarOutput)inner : new OutputWrapper(inner);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		inner.write(b);
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		inner.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		inner.write(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		inner.writeBoolean(v);
+	}
+
+	@Override
+	public void writeByte(int v) throws IOException {
+		inner.writeByte(v);
+	}
+
+	@Override
+	public void writeShort(int v) throws IOException {
+		inner.writeShort(v);
+	}
+
+	@Override
+	public void writeChar(int v) throws IOException {
+		inner.writeChar(v);
+	}
+
+	@Override
+	public void writeInt(int v) throws IOException {
+		inner.writeInt(v);
+	}
+
+	@Override
+	public void writeLong(long v) throws IOException {
+		inner.writeLong(v);
+	}
+
+	@Override
+	public void writeFloat(float v) throws IOException {
+		inner.writeFloat(v);
+	}
+
+	@Override
+	public void writeDouble(double v) throws IOException {
+		inner.writeDouble(v);
+	}
+
+	@Override
+	public void writeBytes(String s) throws IOException {
+		inner.writeBytes(s);
+	}
+
+	@Override
+	public void writeChars(String s) throws IOException {
+		inner.writeChars(s);
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		inner.writeUTF(s);
+	}
+
+	@Override
+	public void writeUInt16(long v) throws IOException {
+		inner.writeShort(Short.reverseBytes((short)v));
+	}
+
+	@Override
+	public void writeUInt32(long v) throws IOException {
+		inner.writeInt(Integer.reverseBytes((int)v));
+	}
+
+	@Override
+	public void writeUInt64(long v) throws IOException {
+		inner.writeLong(Long.reverseBytes(v));
+	}
+
+	@Override
+	public void writeUInt16BE(long v) throws IOException {
+		inner.writeShort((int)v);
+	}
+
+	@Override
+	public void writeUInt32BE(long v) throws IOException {
+		inner.writeInt((int)v);
+	}
+
+	@Override
+	public void writeUInt64BE(long v) throws IOException {
+		inner.writeLong(v);
+	}
 }
@@ -26,6 +26,7 @@ package rs.igram.kiribi.io;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 
@@ -35,6 +36,13 @@ import java.io.IOException;
  * @author Michael Sargent
  */
 public class VarOutputStream extends DataOutputStream implements VarOutput {
+	// strings are encoded here before being written
+	private byte[] scratch;
+	// null when not instrumented
+	final CodecMetrics metrics;
+	private final Metered metered;
+	private long published;
+	
 	/**
 	 * Initializes a newly created <code>VarOutputStream</code> object
 	 * so that it writes to provided <code>OutputStream</code>.
@@ -43,6 +51,27 @@ public class VarOutputStream extends DataOutputStream implements VarOutput {
 	 */
 	public VarOutputStream(OutputStream os) {
 		super(os);
+		metrics = null;
+		metered = null;
+	}
+	
+	/**
+	 * Initializes a newly created <code>VarOutputStream</code> object
+	 * so that it writes to provided <code>OutputStream</code>, recording what it
+	 * writes in the provided <code>CodecMetrics</code>.
+	 *
+	 * @param os The output stream to write to.
+	 * @param metrics The metrics to record to.
+	 * @see CodecMetrics
+	 */
+	public VarOutputStream(OutputStream os, CodecMetrics metrics) {
+		this(new Metered(os), metrics);
+	}
+	
+	private VarOutputStream(Metered os, CodecMetrics metrics) {
+		super(os);
+		this.metrics = metrics;
+		metered = os;
 	}
 	
 	/**
@@ -52,6 +81,8 @@ public class VarOutputStream extends DataOutputStream implements VarOutput {
 	 */	
 	public  VarOutputStream() {
 		super(new ByteArrayOutputStream());
+		metrics = null;
+		metered = null;
 	}
 
 	/**
@@ -71,6 +102,69 @@ public class VarOutputStream extends DataOutputStream implements VarOutput {
 		return ((ByteArrayOutputStream)out).toByteArray();
 	}
 	
+	@Override
+	public void writeVarChar(String s) throws IOException {
+		final var L = s.length();
+		final var b = scratch(L);
+		ByteUtils.encodeLatin1(s, b, 0);
+		writeVarInt(L);
+		write(b, 0, L);
+		if(metrics != null) metrics.string(L);
+	}
+
+	@Override
+	public void writeString(String s) throws IOException {
+		final var L = ByteUtils.utf8Length(s);
+		final var b = scratch(L);
+		ByteUtils.encodeUTF8(s, b, 0);
+		writeVarInt(L);
+		write(b, 0, L);
+		if(metrics != null) metrics.string(L);
+	}
+
+	@Override
+	public void writeVarInt(long v) throws IOException {
+		VarOutput.super.writeVarInt(v);
+		if(metrics != null) metrics.varInt(v);
+	}
+
+	@Override
+	public void writeBytes(byte[] b) throws IOException {
+		VarOutput.super.writeBytes(b);
+		if(metrics != null) metrics.byteArray(b.length);
+	}
+
+	@Override
+	public void write(Encodable encodable) throws IOException {
+		if(metrics == null){
+			encodable.write(this);
+			return;
+		}
+		final var start = metered.count;
+		encodable.write(this);
+		metrics.encoded(encodable.getClass(), metered.count - start);
+		publish();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		super.flush();
+		publish();
+	}
+	
+	// adds the bytes written since last published to the metrics
+	void publish() {
+		if(metrics == null) return;
+		final var n = metered.count;
+		metrics.bytesWritten.add(n - published);
+		published = n;
+	}
+	
+	private byte[] scratch(int n) {
+		if(scratch == null || scratch.length < n) scratch = new byte[Math.max(n, 64)];
+		return scratch;
+	}
+	
 	/**
 	 * Convenience method to write a <code>long</code> as a VarInt to a byte array.
 	 * <p>This is equivalent to:
@@ -86,8 +180,29 @@ public class VarOutputStream extends DataOutputStream implements VarOutput {
 	 * @throws IOException if there was a problem writing the data.
 	 */	
 	public static byte[] varIntToBytes(long l) throws IOException {
-		var out = new VarOutputStream();
+		var out = new ByteArrayVarOutput(9);
 		out.writeVarInt(l);
 		return out.toByteArray();
 	}	
+	
+	// counts the bytes written by this stream, which is its only writer
+	private static final class Metered extends FilterOutputStream {
+		long count;
+		
+		Metered(OutputStream out) {
+			super(out);
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
 }
@@ -0,0 +1,373 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import static rs.igram.kiribi.io.VarTest.random;
+
+public class ByteBufferVarTest {
+   @Test
+   public void testCompatibleWithStreams() throws IOException {
+       var expected = sample(new VarOutputStream()).toByteArray();
+       
+       var out = new ByteBufferVarOutput(ByteBuffer.allocate(expected.length));
+       sample(out);
+       assertEquals(0, out.remaining());
+       assertTrue(Arrays.equals(expected, out.buffer().array()));
+       
+       verify(new ByteBufferVarInput(expected));
+       verify(new VarInputStream(expected));
+   }
+
+   @Test
+   public void testHeapAndDirect() throws IOException {
+       for(var buf : new ByteBuffer[]{ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024)}){
+           for(var order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}){
+               buf.clear().order(order);
+               sample(new ByteBufferVarOutput(buf));
+               buf.flip();
+               verify(new ByteBufferVarInput(buf));
+               assertFalse(buf.hasRemaining());
+               assertEquals(order, buf.order());
+           }
+       }
+   }
+
+   @Test
+   public void testUnderflow() throws IOException {
+       var in = new ByteBufferVarInput(new byte[3]);
+       assertThrows(EOFException.class, () -> in.readInt());
+       assertEquals(3, in.remaining());
+       
+       var out = new VarOutputStream();
+       out.writeInt(1000);
+       var in2 = new ByteBufferVarInput(out.toByteArray());
+       assertThrows(EOFException.class, () -> in2.readBytes());
+   }
+
+   @Test
+   public void testOverflow() throws IOException {
+       var out = new ByteBufferVarOutput(new byte[7]);
+       assertThrows(IOException.class, () -> out.writeLong(1l));
+       assertEquals(7, out.remaining());
+   }
+   
+   @Test
+   public void testByteArrayOutput() throws IOException {
+       var expected = sample(new VarOutputStream()).toByteArray();
+       
+       var out = new ByteArrayVarOutput(1);
+       sample(out);
+       assertEquals(expected.length, out.size());
+       assertTrue(Arrays.equals(expected, out.toByteArray()));
+       verify(new ByteBufferVarInput(out.slice()));
+       
+       out.reset();
+       assertEquals(0, out.size());
+   }
+
+   @Test
+   public void testPooledOutput() throws IOException {
+       var out = ByteArrayVarOutput.acquire();
+       var nested = ByteArrayVarOutput.acquire();
+       assertNotSame(out, nested);
+       nested.release();
+       out.writeLong(1l);
+       out.release();
+       assertEquals(0, out.size());
+       
+       try(var again = ByteArrayVarOutput.acquire()){
+           assertSame(out, again);
+       }
+   }
+
+   @Test
+   public void testEncodeIntoBuffer() throws IOException {
+       var e = new EncodableBytes(new byte[]{1, 2, 3, 4});
+       var buf = ByteBuffer.allocate(16);
+       assertEquals(8, e.encode(buf));
+       assertEquals(8, buf.position());
+       assertThrows(IOException.class, () -> e.encode(buf.limit(12)));
+       assertEquals(8, buf.position());
+       
+       buf.flip();
+       assertEquals(e, new EncodableBytes(new ByteBufferVarInput(buf)));
+       assertTrue(Arrays.equals(e.encode(), ByteUtils.crop(buf.array(), 8)));
+   }
+   
+   @Test
+   public void testCountingOutput() throws IOException {
+       var expected = sample(new VarOutputStream()).toByteArray();
+       var out = sample(new CountingVarOutput());
+       assertEquals(expected.length, out.size());
+       
+       var e = new EncodableBytes(new byte[300]);
+       assertEquals(e.encode().length, e.encodedSize());
+   }
+
+   @Test
+   public void testWriteEncodableToStream() throws IOException {
+       var e = new EncodableBytes(new byte[]{1, 2, 3, 4});
+       var bout = new ByteArrayOutputStream();
+       var stream = ByteStream.stream(null, new VarOutputStream(bout));
+       stream.write(e);
+       stream.write(e.encode());
+       
+       var in = ByteStream.stream(new VarInputStream(bout.toByteArray()), null);
+       assertTrue(Arrays.equals(e.encode(), in.read()));
+       assertTrue(Arrays.equals(e.encode(), in.read()));
+   }
+   
+   @Test
+   public void testFailedEncodableDropped() throws IOException {
+       var bout = new ByteArrayOutputStream();
+       var stream = ByteStream.stream(null, new VarOutputStream(bout));
+       stream.cork();
+       stream.write(new EncodableBytes(new byte[]{1}));
+       Encodable faulty = out -> {
+           out.writeInt(7);
+           out.writeVarInt(-1);
+       };
+       assertThrows(IllegalArgumentException.class, () -> stream.write(faulty));
+       // the length is that of the data written, whatever the encoded size reported
+       var wrong = new EncodableBytes(new byte[]{2, 3}) {
+           @Override
+           public int encodedSize() {
+               return 100;
+           }
+       };
+       stream.write(wrong);
+       stream.uncork();
+       
+       var in = ByteStream.stream(new VarInputStream(bout.toByteArray()), null);
+       assertArrayEquals(new EncodableBytes(new byte[]{1}).encode(), in.read());
+       assertArrayEquals(new EncodableBytes(new byte[]{2, 3}).encode(), in.read());
+       assertThrows(EOFException.class, () -> in.read());
+   }
+   
+   @Test
+   public void testCork() throws IOException {
+       var writes = new int[1];
+       var bout = new ByteArrayOutputStream() {
+           @Override
+           public void write(byte[] b, int off, int len) {
+               writes[0]++;
+               super.write(b, off, len);
+           }
+       };
+       var stream = ByteStream.stream(null, new VarOutputStream(bout), 1024);
+       
+       // header and payload go out together
+       stream.write(new byte[10]);
+       assertEquals(1, writes[0]);
+       
+       stream.cork();
+       stream.cork();
+       for(int i = 0; i < 50; i++) stream.write(new byte[]{(byte)i});
+       stream.uncork();
+       assertEquals(1, writes[0]);
+       stream.uncork();
+       assertEquals(2, writes[0]);
+       // unmatched uncork is ignored
+       stream.uncork();
+       assertEquals(2, writes[0]);
+       
+       // flushed once the threshold is reached
+       stream.cork();
+       for(int i = 0; i < 100; i++) stream.write(new byte[20]);
+       assertEquals(4, writes[0]);
+       stream.write(new byte[5000]);
+       assertTrue(writes[0] > 4);
+       stream.uncork();
+       
+       var in = ByteStream.stream(new VarInputStream(bout.toByteArray()), null);
+       assertEquals(10, in.read().length);
+       for(int i = 0; i < 50; i++) assertEquals(i, in.read()[0]);
+       for(int i = 0; i < 100; i++) assertEquals(20, in.read().length);
+       assertEquals(5000, in.read().length);
+   }
+   
+   @Test
+   public void testStream() throws IOException {
+       var out = new ByteArrayVarOutput();
+       for(int i = 0; i < 1000; i++) out.writeBytes(new EncodableBytes(new byte[i % 50]).encode());
+       var frames = out.slice();
+       
+       Decoder<EncodableBytes> decoder = EncodableBytes::new;
+       var lengths = decoder.stream(frames).mapToInt(e -> e.bytes().length).toArray();
+       assertEquals(1000, lengths.length);
+       for(int i = 0; i < lengths.length; i++) assertEquals(i % 50, lengths[i]);
+       assertEquals(0, frames.position());
+       
+       var expected = Arrays.stream(lengths).sum();
+       assertEquals(expected, decoder.stream(frames).parallel().mapToInt(e -> e.bytes().length).sum());
+       
+       var in = new ByteBufferVarInput(frames.duplicate());
+       assertEquals(1000, decoder.stream(in).count());
+       assertEquals(0, in.remaining());
+       assertEquals(expected, decoder.stream(new VarInputStream(out.toByteArray())).parallel().mapToInt(e -> e.bytes().length).sum());
+       
+       frames.limit(frames.limit() - 1);
+       assertThrows(IOException.class, () -> decoder.stream(frames));
+   }
+
+   @Test
+   public void testCopy() throws IOException {
+       var payload = new byte[100];
+       random(payload);
+       var e = new EncodableBytes(payload);
+       assertEquals(e, e.copy(EncodableBytes::new));
+       
+       // views must not share the pooled buffer
+       var copy = e.copy(in -> new EncodableBytes(in.readBytesView()));
+       new EncodableBytes(new byte[100]).encode();
+       assertEquals(e, copy);
+       assertEquals(e, e.copyUnchecked(EncodableBytes::new));
+   }
+   
+   @Test
+   public void testBytesView() throws IOException {
+       var payload = new byte[1000];
+       random(payload);
+       var out = new ByteArrayVarOutput();
+       out.writeBytes(payload);
+       out.writeLong(-1l);
+       
+       var in = new ByteBufferVarInput(out.slice());
+       var view = in.readBytesView();
+       assertTrue(view.isReadOnly());
+       assertEquals(payload.length, view.remaining());
+       assertEquals(-1l, in.readLong());
+       
+       var e = new EncodableBytes(view);
+       assertEquals(0, view.position());
+       assertEquals(new EncodableBytes(payload), e);
+       assertEquals(new EncodableBytes(payload).hashCode(), e.hashCode());
+       assertEquals(Arrays.hashCode(payload), e.hashCode());
+       assertTrue(Arrays.equals(payload, e.bytes()));
+       
+       // forwarded without copying
+       var fwd = new ByteArrayVarOutput();
+       fwd.write(e);
+       assertTrue(Arrays.equals(new EncodableBytes(payload).encode(), fwd.toByteArray()));
+       var direct = ByteBuffer.allocateDirect(1004);
+       direct.put(fwd.slice()).flip();
+       assertEquals(e, new EncodableBytes(new VarInputStream(e.encode())));
+       assertEquals(e, new EncodableBytes(new ByteBufferVarInput(direct).readBytesView()));
+       
+       var stream = new VarOutputStream();
+       stream.writeBytes(new ByteBufferVarInput(fwd.toByteArray()).readBytesView());
+       assertTrue(Arrays.equals(fwd.toByteArray(), stream.toByteArray()));
+   }
+   
+   static <T extends VarOutput> T sample(T out) throws IOException {
+       out.writeBoolean(true);
+       out.writeByte(-7);
+       out.writeShort(-1234);
+       out.writeChar('€');
+       out.writeInt(-274211);
+       out.writeLong(-264887030433l);
+       out.writeFloat(3.25f);
+       out.writeDouble(-1.0e100);
+       out.writeUTF("kiribi \u0000 é €");
+       out.writeUInt8(0xFE);
+       out.writeUInt16(0xFEDC);
+       out.writeUInt32(0xFEDCBA98l);
+       out.writeUInt64(0xFEDCBA9876543210l);
+       out.writeUInt16BE(0xFEDC);
+       out.writeUInt32BE(0xFEDCBA98l);
+       out.writeUInt64BE(0xFEDCBA9876543210l);
+       out.writeVarInt(0xFCl);
+       out.writeVarInt(0xFFFFl);
+       out.writeVarInt(0xFFFFFFFFl);
+       out.writeVarInt(0x00000001FFFFFFFFl);
+       out.writeBytes(new byte[]{1, 2, 3});
+       out.writeBigInteger(BigInteger.valueOf(-77665544332211l));
+       out.writeAddress(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 7778));
+       var m = new HashMap<String,String>();
+       m.put("a", "dog");
+       out.write(m);
+       out.writeVarLong128(60000l);
+       out.writeVarLong128(-1l);
+       out.writeSignedVar(-30000l);
+       out.writeLongs(new long[]{1l, -2l, Long.MIN_VALUE});
+       out.writeInts(new int[]{1, -2, Integer.MIN_VALUE});
+       out.writeShorts(new short[]{1, -2, Short.MIN_VALUE});
+       out.writeDoubles(new double[]{1.0, -2.5, Double.MIN_VALUE});
+       return out;
+   }
+   
+   static void verify(VarInput in) throws IOException {
+       assertEquals(true, in.readBoolean());
+       assertEquals(-7, in.readByte());
+       assertEquals(-1234, in.readShort());
+       assertEquals('€', in.readChar());
+       assertEquals(-274211, in.readInt());
+       assertEquals(-264887030433l, in.readLong());
+       assertEquals(3.25f, in.readFloat());
+       assertEquals(-1.0e100, in.readDouble());
+       assertEquals("kiribi \u0000 é €", in.readUTF());
+       assertEquals(0xFE, in.readUInt8());
+       assertEquals(0xFEDC, in.readUInt16());
+       assertEquals(0xFEDCBA98l, in.readULong32());
+       assertEquals(0xFEDCBA9876543210l, in.readULong64());
+       assertEquals(0xFEDC, in.readUInt16BE());
+       assertEquals(0xFEDCBA98l, in.readULong32BE());
+       assertEquals(0xFEDCBA9876543210l, in.readULong64BE());
+       assertEquals(0xFCl, in.readVarLong());
+       assertEquals(0xFFFFl, in.readVarLong());
+       assertEquals(0xFFFFFFFFl, in.readVarLong());
+       assertEquals(0x00000001FFFFFFFFl, in.readVarLong());
+       assertTrue(Arrays.equals(new byte[]{1, 2, 3}, in.readBytes()));
+       assertEquals(BigInteger.valueOf(-77665544332211l), in.readBigInteger());
+       assertEquals(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 7778), in.readAddress());
+       var m = new HashMap<String,String>();
+       in.read(m);
+       assertEquals("dog", m.get("a"));
+       assertEquals(60000l, in.readVarLong128());
+       assertEquals(-1l, in.readVarLong128());
+       assertEquals(-30000l, in.readSignedVar());
+       assertArrayEquals(new long[]{1l, -2l, Long.MIN_VALUE}, in.readLongArray());
+       var ints = new int[4];
+       assertEquals(3, in.readInts(ints));
+       assertArrayEquals(new int[]{1, -2, Integer.MIN_VALUE, 0}, ints);
+       assertArrayEquals(new short[]{1, -2, Short.MIN_VALUE}, in.readShortArray());
+       assertArrayEquals(new double[]{1.0, -2.5, Double.MIN_VALUE}, in.readDoubleArray());
+   }
+}
@@ -28,6 +28,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -166,6 +168,101 @@ public class ByteUtilsTest {
        assertTrue(matches(a, b, 2));
    }
    
+   @Test
+   public void testBitwiseRegions() throws IOException {
+       var random = new SecureRandom();
+       // either side of the parallel threshold
+       for(var L : new int[]{0, 1, 7, 8, 9, 31, 1000, (1 << 20) + 13}){
+           var aOff = L % 5;
+           var bOff = L % 3;
+           var a = new byte[L + aOff];
+           var b = new byte[L + bOff];
+           random.nextBytes(a);
+           random.nextBytes(b);
+           
+           var dst = new byte[L + 2];
+           xor(a, aOff, b, bOff, dst, 2, L);
+           for(int i = 0; i < L; i++) assertEquals((byte)(a[aOff + i] ^ b[bOff + i]), dst[2 + i]);
+           
+           var or = Arrays.copyOf(a, a.length);
+           or(or, aOff, b, bOff, L);
+           for(int i = 0; i < L; i++) assertEquals((byte)(a[aOff + i] | b[bOff + i]), or[aOff + i]);
+           assertTrue(matches(or, aOff, b, bOff, L));
+           
+           var and = Arrays.copyOf(a, a.length);
+           and(and, aOff, b, bOff, L);
+           for(int i = 0; i < L; i++) assertEquals((byte)(a[aOff + i] & b[bOff + i]), and[aOff + i]);
+           assertTrue(matches(a, aOff, and, aOff, L));
+           if(L > 0){
+               // a bit set only in the last byte of the test region
+               var mask = new byte[L];
+               mask[L - 1] = (byte)~a[aOff + L - 1];
+               if(mask[L - 1] != 0) assertFalse(matches(a, aOff, mask, 0, L));
+           }
+           
+           // in place
+           xor(a, aOff, b, bOff, a, aOff, L);
+           for(int i = 0; i < L; i++) assertEquals(dst[2 + i], a[aOff + i]);
+       }
+       assertThrows(ArrayIndexOutOfBoundsException.class, () -> xor(new byte[8], 1, new byte[8], 0, new byte[8], 0, 8));
+   }
+   
+   @Test
+   public void testPrimitiveAccessors() throws IOException {
+       var b = new byte[40];
+       for(var order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}){
+           var be = order == ByteOrder.BIG_ENDIAN;
+           var buf = ByteBuffer.wrap(b).order(order);
+           for(var pos : new int[]{0, 3, 31}){
+               if(be) putShort(b, pos, (short)-2); else putShortLE(b, pos, (short)-2);
+               assertEquals(-2, buf.getShort(pos));
+               assertEquals(-2, be ? getShort(b, pos) : getShortLE(b, pos));
+               assertEquals(0xFFFE, be ? getUnsignedShort(b, pos) : getUnsignedShortLE(b, pos));
+               
+               if(be) put(b, pos, -7788); else putIntLE(b, pos, -7788);
+               assertEquals(-7788, buf.getInt(pos));
+               assertEquals(-7788, be ? getInt(b, pos) : getIntLE(b, pos));
+               assertEquals(-7788 & 0xFFFFFFFFL, be ? getUnsignedInt(b, pos) : getUnsignedIntLE(b, pos));
+               
+               if(be) put(b, pos, Long.MIN_VALUE + 5); else putLongLE(b, pos, Long.MIN_VALUE + 5);
+               assertEquals(Long.MIN_VALUE + 5, buf.getLong(pos));
+               assertEquals(Long.MIN_VALUE + 5, be ? getLong(b, pos) : getLongLE(b, pos));
+               
+               if(be) putFloat(b, pos, 1.5f); else putFloatLE(b, pos, 1.5f);
+               assertEquals(1.5f, buf.getFloat(pos));
+               assertEquals(1.5f, be ? getFloat(b, pos) : getFloatLE(b, pos));
+               
+               if(be) putDouble(b, pos, -2.25); else putDoubleLE(b, pos, -2.25);
+               assertEquals(-2.25, buf.getDouble(pos));
+               assertEquals(-2.25, be ? getDouble(b, pos) : getDoubleLE(b, pos));
+           }
+           
+           var longs = new long[]{1l, -1l, Long.MAX_VALUE};
+           putLongs(b, 4, longs, 0, 3, order);
+           for(int i = 0; i < 3; i++) assertEquals(longs[i], buf.getLong(4 + 8 * i));
+           var longs2 = new long[4];
+           getLongs(b, 4, longs2, 1, 3, order);
+           assertTrue(Arrays.equals(longs, Arrays.copyOfRange(longs2, 1, 4)));
+           
+           var ints = new int[]{1, -1, Integer.MIN_VALUE};
+           putInts(b, 2, ints, 0, 3, order);
+           var ints2 = new int[3];
+           getInts(b, 2, ints2, 0, 3, order);
+           assertTrue(Arrays.equals(ints, ints2));
+           
+           var shorts = new short[]{1, -1, Short.MIN_VALUE};
+           putShorts(b, 1, shorts, 0, 3, order);
+           var shorts2 = new short[3];
+           getShorts(b, 1, shorts2, 0, 3, order);
+           assertTrue(Arrays.equals(shorts, shorts2));
+           assertThrows(IndexOutOfBoundsException.class, () -> getLongs(b, 20, new long[3], 0, 3, order));
+       }
+       
+       assertTrue(Arrays.equals(new char[]{0x1234, 0x5678, 0xFFFF, 0xFFFE}, chars(0x12345678, -2)));
+       assertEquals("\u1234\u5678", charseq(0x12345678).toString());
+       assertTrue(Arrays.equals(new byte[]{0x12, 0x34, 0, 'a'}, ByteUtils.bytes((char)0x1234, 'a')));
+   }
+   
    @Test
    public void testPutGetInt() throws IOException {
        var i = -7788;
@@ -229,6 +326,33 @@ public class ByteUtilsTest {
        assertEquals(8, result);
    }
   
+   @Test
+   public void testVar128Size() throws IOException {
+       assertEquals(1, var128Size(0l));
+       assertEquals(1, var128Size(0x7Fl));
+       assertEquals(2, var128Size(0x80l));
+       assertEquals(2, var128Size(0x3FFFl));
+       assertEquals(3, var128Size(0x4000l));
+       assertEquals(3, var128Size(60000l));
+       assertEquals(9, var128Size(Long.MAX_VALUE));
+       assertEquals(10, var128Size(-1l));
+       
+       assertEquals(1, signedVarSize(-64l));
+       assertEquals(2, signedVarSize(64l));
+       assertEquals(10, signedVarSize(Long.MIN_VALUE));
+   }
+  
+   @Test
+   public void testZigZag() throws IOException {
+       assertEquals(0l, zigZag(0l));
+       assertEquals(1l, zigZag(-1l));
+       assertEquals(2l, zigZag(1l));
+       assertEquals(-1l, zigZag(Long.MIN_VALUE));
+       for(var l : new long[]{0l, 1l, -1l, 12345l, -12345l, Long.MAX_VALUE, Long.MIN_VALUE}){
+           assertEquals(l, unZigZag(zigZag(l)));
+       }
+   }
+  
    @Test
    public void testInet() throws Exception {
    	   var offset = 50;
@@ -0,0 +1,103 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class CheckedStreamTest {
+   @Test
+   public void testCheckedStream() throws IOException {
+       var bout = new ByteArrayOutputStream();
+       var out = ByteStream.checked(null, new VarOutputStream(bout), 100);
+       out.write(new byte[]{1, 2, 3});
+       out.write(new EncodableBytes(new byte[50]));
+       assertThrows(IOException.class, () -> out.write(new byte[101]));
+       
+       var b = bout.toByteArray();
+       assertEquals(4 + 3 + 4 + 4 + 54 + 4, b.length);
+       var in = ByteStream.checked(new VarInputStream(b), null, 100);
+       assertArrayEquals(new byte[]{1, 2, 3}, in.read());
+       assertEquals(50, new EncodableBytes(new ByteBufferVarInput(in.read())).bytes().length);
+       
+       b[5] ^= 1;
+       assertThrows(IOException.class, () -> ByteStream.checked(new VarInputStream(b), null, 100).read());
+       // lengths beyond the limit are rejected without allocating
+       assertThrows(IOException.class, () -> ByteStream.checked(new VarInputStream(new byte[]{0x7F, 0, 0, 0}), null, 100).read());
+   }
+   
+   @Test
+   public void testCheckedVarInputOutput() throws IOException {
+       var out = new ByteArrayVarOutput();
+       var checked = new CheckedVarOutput(out);
+       checked.writeVarInt(300);
+       checked.writeLong(-1);
+       checked.writeUTF("checked");
+       checked.writeString("é");
+       checked.writeBytes(new byte[]{1, 2});
+       var checksum = checked.checksum();
+       out.writeInt(checksum);
+       
+       var crc = new CRC32C();
+       crc.update(out.toByteArray(), 0, out.size() - 4);
+       assertEquals((int)crc.getValue(), checksum);
+       
+       var in = new ByteBufferVarInput(out.toByteArray());
+       var cin = new CheckedVarInput(in);
+       assertEquals(300, cin.readVarInt());
+       assertEquals(-1, cin.readLong());
+       assertEquals("checked", cin.readUTF());
+       assertEquals("é", cin.readString());
+       assertArrayEquals(new byte[]{1, 2}, cin.readBytes());
+       cin.verify(in.readInt());
+       
+       var bad = out.toByteArray();
+       bad[3] ^= 1;
+       var cbad = new CheckedVarInput(new ByteBufferVarInput(bad));
+       cbad.skipBytes(bad.length - 4);
+       assertThrows(IOException.class, () -> cbad.verify(ByteUtils.getInt(bad, bad.length - 4)));
+   }
+   
+   @Test
+   public void testCheckedReadLine() throws IOException {
+       var b = "a\rb\r\nc\n\rd".getBytes();
+       var in = new CheckedVarInput(new ByteBufferVarInput(b));
+       assertEquals("a", in.readLine());
+       assertEquals("b", in.readLine());
+       assertEquals("c", in.readLine());
+       assertEquals("", in.readLine());
+       assertEquals('d', in.readByte());
+       assertNull(in.readLine());
+       
+       var crc = new CRC32C();
+       crc.update(b);
+       in.verify((int)crc.getValue());
+   }
+}
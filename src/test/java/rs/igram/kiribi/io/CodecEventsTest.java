@@ -0,0 +1,118 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import rs.igram.kiribi.io.TaggedStreamTest.Ping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class CodecEventsTest {
+   @Test
+   public void testEvents() throws Exception {
+       var events = record(() -> {
+           var bytes = new Ping(7).encode();
+           assertEquals(7, ((Decoder<Ping>)Ping::new).decode(bytes).v);
+           var bout = new ByteArrayOutputStream();
+           ByteStream.stream(null, new VarOutputStream(bout)).write(bytes);
+           ByteStream.stream(new VarInputStream(bout.toByteArray()), null).read();
+       });
+       var names = new HashMap<String,Long>();
+       for(var event : events) names.put(event.getEventType().getName(), event.getLong("bytes"));
+       assertEquals(Map.of(
+           "rs.igram.kiribi.io.Encode", 4L,
+           "rs.igram.kiribi.io.Decode", 4L,
+           "rs.igram.kiribi.io.StreamRead", 4L,
+           "rs.igram.kiribi.io.StreamWrite", 4L), names);
+   }
+   
+   @Test
+   public void testChannelEvents() throws Exception {
+       var events = record(() -> {
+           try(var selector = new FrameSelector(1 << 20);
+               var server = ServerSocketChannel.open()){
+               server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+               new Thread(selector).start();
+               selector.listen(server, (channel, frame) -> channel.write(frame));
+               
+               var client = selector.register(SocketChannel.open(server.getLocalAddress()), null);
+               client.write(new byte[100]);
+               assertEquals(100, client.read().length);
+               client.close();
+           }
+       });
+       var reads = 0;
+       var writes = 0;
+       for(var event : events){
+           if(!event.getClass("stream").getName().equals(FramedChannel.class.getName())) continue;
+           assertEquals(100, event.getLong("bytes"));
+           if(event.getEventType().getName().equals("rs.igram.kiribi.io.StreamRead")) reads++;
+           if(event.getEventType().getName().equals("rs.igram.kiribi.io.StreamWrite")) writes++;
+       }
+       // the echo written by the selector thread may not be committed yet
+       assertEquals(1, reads);
+       assertTrue(writes >= 1);
+   }
+   
+   // records the codec events emitted by a task, whatever their duration
+   static List<RecordedEvent> record(Task task) throws Exception {
+       var file = Files.createTempFile("codec", ".jfr");
+       try{
+           try(var recording = new Recording()){
+               for(var name : List.of("Encode", "Decode", "StreamRead", "StreamWrite")){
+                   recording.enable("rs.igram.kiribi.io."+name).withThreshold(Duration.ZERO);
+               }
+               recording.start();
+               task.run();
+               recording.stop();
+               recording.dump(file);
+           }
+           return RecordingFile.readAllEvents(file);
+       }finally{
+           Files.delete(file);
+       }
+   }
+   
+   interface Task {
+       void run() throws IOException;
+   }
+}
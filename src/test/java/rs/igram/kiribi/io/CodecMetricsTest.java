@@ -0,0 +1,113 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import rs.igram.kiribi.io.TaggedStreamTest.Ping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class CodecMetricsTest {
+   @Test
+   public void testMetrics() throws Exception {
+       var metrics = new CodecMetrics();
+       var bout = new ByteArrayOutputStream();
+       var vout = new VarOutputStream(bout, metrics);
+       var stream = ByteStream.stream(null, vout);
+       stream.write(new byte[10]);
+       stream.write(new Ping(1));
+       vout.writeVarInt(1);
+       vout.writeVarInt(300);
+       vout.writeString("héllo");
+       vout.write(new Ping(2));
+       vout.flush();
+       
+       assertEquals(bout.size(), metrics.getBytesWritten());
+       assertEquals(2, metrics.getFramesWritten());
+       assertArrayEquals(new long[]{2, 1, 0, 0}, metrics.getVarIntSizes());
+       assertEquals(1, metrics.getStrings());
+       assertEquals(6, metrics.getStringBytes());
+       assertEquals(Map.of(Ping.class.getName(), 2L), metrics.getEncodes());
+       assertEquals(Map.of(Ping.class.getName(), 8L), metrics.getEncodedBytes());
+       
+       var vin = new VarInputStream(new ByteArrayInputStream(bout.toByteArray()), metrics);
+       var in = ByteStream.stream(vin, null);
+       assertEquals(10, in.read().length);
+       assertEquals(1, new Ping(new ByteBufferVarInput(in.read())).v);
+       assertEquals(1, vin.readVarInt());
+       assertEquals(300, vin.readVarInt());
+       assertEquals("héllo", vin.readString());
+       assertEquals(2, vin.read(Ping::new).v);
+       assertThrows(EOFException.class, () -> in.read());
+       vin.close();
+       
+       assertEquals(bout.size(), metrics.getBytesRead());
+       // frames are counted as frames only, on both sides
+       assertEquals(2, metrics.getFramesRead());
+       assertEquals(0, metrics.getByteArrays());
+       assertArrayEquals(new long[]{4, 2, 0, 0}, metrics.getVarIntSizes());
+       assertEquals(Map.of(Ping.class.getName(), 1L), metrics.getDecodes());
+       assertEquals(Map.of(Ping.class.getName(), 4L), metrics.getDecodedBytes());
+       
+       metrics.register("test");
+       try{
+           var server = ManagementFactory.getPlatformMBeanServer();
+           var name = new ObjectName("rs.igram.kiribi.io:type=CodecMetrics,name=\"test\"");
+           assertEquals(metrics.getBytesRead(), server.getAttribute(name, "BytesRead"));
+           assertThrows(IllegalStateException.class, () -> metrics.register("test"));
+       }finally{
+           metrics.unregister();
+       }
+       metrics.reset();
+       assertEquals(0, metrics.getBytesRead());
+   }
+   
+   @Test
+   public void testFailedWritesNotCounted() throws Exception {
+       var metrics = new CodecMetrics();
+       var failing = new OutputStream() {
+           @Override
+           public void write(int b) throws IOException {
+               throw new IOException("Broken pipe");
+           }
+       };
+       var stream = ByteStream.stream(null, new VarOutputStream(failing, metrics));
+       assertThrows(IOException.class, () -> stream.write(new byte[10]));
+       assertThrows(IOException.class, () -> stream.write(new byte[10_000]));
+       assertThrows(IOException.class, () -> stream.write(new Ping(1)));
+       assertEquals(0, metrics.getFramesWritten());
+   }
+}
@@ -0,0 +1,74 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import static rs.igram.kiribi.io.VarTest.random;
+
+public class CompressedStreamTest {
+   @Test
+   public void testCompressedStream() throws IOException {
+       var text = "peer=10.0.0.1:9000 state=UP seen=1234567890 ".repeat(20).getBytes();
+       var dictionary = ByteStream.dictionary(List.of(new byte[100], text), 512);
+       assertEquals(512, dictionary.length);
+       assertEquals(text[text.length - 1], dictionary[511]);
+       
+       var bout = new ByteArrayOutputStream();
+       var out = ByteStream.compressed(ByteStream.stream(null, new VarOutputStream(bout)), 64, dictionary);
+       var small = new byte[]{1, 2, 3};
+       var noise = new byte[1000];
+       random(noise);
+       out.write(small);
+       out.write(text);
+       out.write(noise);
+       out.write(new EncodableBytes(text));
+       // raw frames carry a one byte flag, the text is deflated
+       assertTrue(bout.size() < 4 * 4 + 4 + 1000 + 2 + 300);
+       
+       var in = ByteStream.compressed(ByteStream.stream(new VarInputStream(bout.toByteArray()), null), 64, dictionary);
+       assertArrayEquals(small, in.read());
+       assertArrayEquals(text, in.read());
+       assertArrayEquals(noise, in.read());
+       assertArrayEquals(text, new EncodableBytes(new ByteBufferVarInput(in.read())).bytes());
+       
+       // both ends must share the dictionary
+       var plain = ByteStream.compressed(ByteStream.stream(new VarInputStream(bout.toByteArray()), null), 64);
+       plain.read();
+       assertThrows(IOException.class, () -> plain.read());
+       
+       var other = dictionary.clone();
+       other[0] ^= 1;
+       var mismatched = ByteStream.compressed(ByteStream.stream(new VarInputStream(bout.toByteArray()), null), 64, other);
+       mismatched.read();
+       assertThrows(IOException.class, () -> mismatched.read());
+   }
+}
@@ -0,0 +1,216 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.tools.ToolProvider;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class EncodedTest {
+   @Test
+   public void testGeneratedCodec() throws Exception {
+       var peer = new Peer();
+       peer.id = -7;
+       peer.seen = Long.MAX_VALUE;
+       peer.weight = 0.5;
+       peer.active = true;
+       peer.port = 8080;
+       peer.name = "peer-é";
+       peer.key = BigInteger.TWO.pow(100).negate();
+       peer.address = new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 9000);
+       peer.state = State.DOWN;
+       peer.data = new byte[]{1, 2, 3};
+       peer.grid = new String[][]{{"a"}, {}, {"b", "c"}};
+       peer.peers = List.of(new InetSocketAddress(InetAddress.getByName("::1"), 1));
+       peer.tags = new TreeMap<>(Map.of("x", List.of(1, 2), "y", List.of()));
+       peer.children = new ArrayList<>(List.of(child(1), child(2)));
+       peer.blob = new EncodableBytes(new byte[]{9});
+       
+       try(var out = ByteArrayVarOutput.acquire()){
+           EncodedTest_PeerCodec.write(peer, out);
+           var copy = new ByteBufferVarInput(out.slice()).read(EncodedTest_PeerCodec.DECODER);
+           
+           assertEquals(peer.id, copy.id);
+           assertEquals(peer.seen, copy.seen);
+           assertEquals(peer.weight, copy.weight);
+           assertEquals(peer.active, copy.active);
+           assertEquals(peer.port, copy.port);
+           assertEquals(peer.name, copy.name);
+           assertEquals(peer.key, copy.key);
+           assertEquals(peer.address, copy.address);
+           assertEquals(peer.state, copy.state);
+           assertArrayEquals(peer.data, copy.data);
+           assertTrue(Arrays.deepEquals(peer.grid, copy.grid));
+           assertEquals(peer.peers, copy.peers);
+           assertEquals(peer.tags, copy.tags);
+           assertEquals(2, copy.children.size());
+           assertEquals(Set.of(2L), copy.children.get(1).ids);
+           assertArrayEquals(peer.blob.bytes(), copy.blob.bytes());
+           assertEquals(0, copy.skipped);
+           
+           var bytes = EncodedTest_PeerCodec.encodable(peer).encode();
+           assertArrayEquals(out.toByteArray(), bytes);
+       }
+   }
+   
+   @Test
+   public void testGeneratedRecordCodec(@TempDir Path dir) throws Exception {
+       var loader = records(dir);
+       var node = loader.loadClass("kiribi.sample.Node");
+       var codec = loader.loadClass("kiribi.sample.NodeCodec");
+       var write = codec.getMethod("write", node, VarOutput.class);
+       var read = codec.getMethod("read", VarInput.class);
+       var sample = node.getMethod("sample").invoke(null);
+       
+       try(var out = ByteArrayVarOutput.acquire()){
+           write.invoke(null, sample, out);
+           var copy = read.invoke(null, new ByteBufferVarInput(out.slice()));
+           assertEquals(sample, copy);
+           
+           var bytes = ((Encodable)codec.getMethod("encodable", node).invoke(null, copy)).encode();
+           assertArrayEquals(out.toByteArray(), bytes);
+       }
+   }
+   
+   @Test
+   @SuppressWarnings("unchecked")
+   public void testRecordCodec(@TempDir Path dir) throws Exception {
+       var loader = records(dir);
+       var node = (Class<Object>)loader.loadClass("kiribi.sample.Node");
+       var codec = loader.loadClass("kiribi.sample.NodeCodec");
+       var sample = node.getMethod("sample").invoke(null);
+       var record = RecordCodec.of(node);
+       assertSame(record, RecordCodec.of(node));
+       assertSame(node, record.type());
+       
+       try(var out = ByteArrayVarOutput.acquire()){
+           record.write(sample, out);
+           assertEquals(sample, new ByteBufferVarInput(out.slice()).read(record));
+           assertArrayEquals(out.toByteArray(), record.encodable(sample).encode());
+           
+           // wire compatible with the generated codec both ways
+           var generated = ((Encodable)codec.getMethod("encodable", node).invoke(null, sample)).encode();
+           assertArrayEquals(generated, out.toByteArray());
+           assertEquals(sample, codec.getMethod("read", VarInput.class).invoke(null, new ByteBufferVarInput(out.slice())));
+           assertEquals(sample, record.decode(generated));
+       }
+   }
+   
+   @Test
+   public void testRecordCodecRejectsClasses() throws Exception {
+       assertThrows(IllegalArgumentException.class, () -> RecordCodec.of(Peer.class));
+       assertThrows(IllegalArgumentException.class, () -> RecordCodec.of(String.class));
+   }
+   
+   // records cannot be declared at the test source level, so sample records are
+   // compiled here with the annotation processor
+   static ClassLoader records(Path dir) throws Exception {
+       assumeTrue(Runtime.version().feature() >= 16, "records require Java 16");
+       var processor = System.getProperty("kiribi.processor.path");
+       assumeTrue(processor != null, "annotation processor path not set");
+       
+       var source = dir.resolve("kiribi/sample/Node.java");
+       Files.createDirectories(source.getParent());
+       Files.writeString(source, String.join("\n",
+           "package kiribi.sample;",
+           "import java.net.InetSocketAddress;",
+           "import java.util.List;",
+           "import java.util.Map;",
+           "import java.util.Set;",
+           "import rs.igram.kiribi.io.Encoded;",
+           "@Encoded",
+           "public record Node(int id, long seen, double weight, boolean active, Integer port, String name,",
+           "    InetSocketAddress address, State state, List<InetSocketAddress> peers,",
+           "    Map<String, List<Integer>> tags, Leaf leaf, List<Leaf> leaves) {",
+           "  public enum State { UP, DOWN }",
+           "  @Encoded",
+           "  public record Leaf(Set<Long> ids, String label) {}",
+           "  public static Node sample() {",
+           "    return new Node(-7, Long.MAX_VALUE, 0.5, true, 8080, \"node-\\u00e9\",",
+           "      new InetSocketAddress(\"10.0.0.1\", 9000), State.DOWN,",
+           "      List.of(new InetSocketAddress(\"::1\", 1)), Map.of(\"x\", List.of(1, 2)),",
+           "      new Leaf(Set.of(1L), \"a\"), List.of(new Leaf(Set.of(), \"\"), new Leaf(Set.of(2L, 3L), \"b\")));",
+           "  }",
+           "}"));
+       
+       var classes = Path.of(Encodable.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+       var javac = ToolProvider.getSystemJavaCompiler();
+       assumeTrue(javac != null, "no system java compiler");
+       assertEquals(0, javac.run(null, null, null, "-cp", classes.toString(), "-processorpath", processor, 
+           "-d", dir.toString(), source.toString()));
+       return new URLClassLoader(new URL[]{dir.toUri().toURL()}, EncodedTest.class.getClassLoader());
+   }
+   
+   static Child child(long id) {
+       var child = new Child();
+       child.ids = Set.of(id);
+       return child;
+   }
+   
+   enum State { UP, DOWN }
+   
+   @Encoded
+   static class Peer {
+       int id;
+       long seen;
+       double weight;
+       boolean active;
+       Integer port;
+       String name;
+       BigInteger key;
+       InetSocketAddress address;
+       State state;
+       byte[] data;
+       String[][] grid;
+       List<InetSocketAddress> peers;
+       Map<String, List<Integer>> tags;
+       ArrayList<Child> children;
+       EncodableBytes blob;
+       transient int skipped;
+   }
+   
+   @Encoded
+   static class Child {
+       Set<Long> ids;
+   }
+}
@@ -0,0 +1,115 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class FrameSelectorTest {
+   @Test
+   public void testEcho() throws IOException {
+       try(var selector = new FrameSelector(1 << 20);
+           var server = ServerSocketChannel.open()){
+           server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+           new Thread(selector).start();
+           selector.listen(server, (channel, frame) -> channel.write(frame));
+           
+           // blocking client
+           try(var channel = SocketChannel.open(server.getLocalAddress())){
+               var stream = ByteStream.stream(channel);
+               exchange(stream, stream);
+           }
+           
+           // non-blocking client
+           var client = selector.register(SocketChannel.open(server.getLocalAddress()), null);
+           exchange(client, client);
+           client.close();
+           assertFalse(client.isOpen());
+           assertThrows(EOFException.class, () -> client.read());
+       }
+   }
+
+   @Test
+   public void testFrameTooLong() throws IOException {
+       try(var selector = new FrameSelector(16);
+           var server = ServerSocketChannel.open()){
+           server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+           new Thread(selector).start();
+           selector.listen(server, (channel, frame) -> channel.write(frame));
+           
+           try(var channel = SocketChannel.open(server.getLocalAddress())){
+               var stream = ByteStream.stream(channel);
+               stream.write(new byte[17]);
+               assertThrows(IOException.class, () -> stream.read());
+           }
+       }
+   }
+   
+   @Test
+   public void testFaultyHandler() throws IOException {
+       try(var selector = new FrameSelector(1 << 20);
+           var server = ServerSocketChannel.open()){
+           server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+           new Thread(selector).start();
+           selector.listen(server, (channel, frame) -> {
+               if(frame.length == 0) throw new IllegalStateException("Faulty handler");
+               channel.write(frame);
+           });
+           
+           // only the channel whose handler failed is closed
+           try(var faulty = SocketChannel.open(server.getLocalAddress());
+               var channel = SocketChannel.open(server.getLocalAddress())){
+               var stream = ByteStream.stream(faulty);
+               stream.write(new byte[0]);
+               assertThrows(EOFException.class, () -> stream.read());
+               
+               var other = ByteStream.stream(channel);
+               other.write(new byte[]{1, 2, 3});
+               assertArrayEquals(new byte[]{1, 2, 3}, other.read());
+           }
+       }
+   }
+   
+   private static void exchange(ByteStream out, ByteStream in) throws IOException {
+       // sizes either side of the selector read buffer
+       var sizes = new int[]{0, 1, 1000, 64 * 1024 - 4, 64 * 1024, 500_000};
+       var frames = new byte[sizes.length][];
+       for(int i = 0; i < sizes.length; i++){
+           frames[i] = new byte[sizes[i]];
+           for(int j = 0; j < sizes[i]; j++) frames[i][j] = (byte)(i + j);
+           out.write(frames[i]);
+       }
+       for(var frame : frames) assertTrue(Arrays.equals(frame, in.read()));
+   }
+}
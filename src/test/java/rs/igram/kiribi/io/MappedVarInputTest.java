@@ -0,0 +1,138 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import static rs.igram.kiribi.io.ByteBufferVarTest.sample;
+import static rs.igram.kiribi.io.ByteBufferVarTest.verify;
+import static rs.igram.kiribi.io.VarTest.random;
+
+public class MappedVarInputTest {
+   @Test
+   public void testRead() throws IOException {
+       var file = Files.createTempFile("mapped", ".bin");
+       try{
+           var payload = new byte[100];
+           random(payload);
+           var out = sample(new VarOutputStream());
+           out.writeBytes(payload);
+           out.writeLong(-1l);
+           Files.write(file, out.toByteArray());
+           
+           try(var in = new MappedVarInput(file)){
+               assertEquals(Files.size(file), in.size());
+               read(in, payload);
+           }
+           
+           // small segments so values straddle segment boundaries
+           for(int shift = 3; shift < 7; shift++){
+               try(var channel = FileChannel.open(file);
+                   var in = new MappedVarInput(channel, 0, channel.size(), shift, false)){
+                   read(in, payload);
+               }
+           }
+       }finally{
+           Files.delete(file);
+       }
+   }
+   
+   @Test
+   public void testSeek() throws IOException {
+       var file = Files.createTempFile("mapped", ".bin");
+       try{
+           var out = new VarOutputStream();
+           for(long i = 0; i < 100; i++) out.writeLong(i);
+           Files.write(file, out.toByteArray());
+           
+           try(var channel = FileChannel.open(file);
+               var in = new MappedVarInput(channel, 8, 800 - 16, 5, false)){
+               assertEquals(1, in.readLong());
+               in.seek(8 * 50);
+               assertEquals(51, in.readLong());
+               assertEquals(8 * 51, in.position());
+               in.seek(in.size() - 4);
+               assertThrows(EOFException.class, () -> in.readLong());
+               assertEquals(in.size() - 4, in.position());
+               assertThrows(IllegalArgumentException.class, () -> in.seek(in.size() + 1));
+               in.seek(0);
+               in.close();
+               assertThrows(ClosedChannelException.class, () -> in.readLong());
+               assertTrue(channel.isOpen());
+           }
+       }finally{
+           Files.delete(file);
+       }
+   }
+   
+   @Test
+   public void testStream() throws IOException {
+       var file = Files.createTempFile("mapped", ".bin");
+       try{
+           var out = new VarOutputStream();
+           for(int i = 0; i < 1000; i++) out.writeBytes(new EncodableBytes(new byte[i % 50]).encode());
+           Files.write(file, out.toByteArray());
+           
+           Decoder<EncodableBytes> decoder = EncodableBytes::new;
+           try(var channel = FileChannel.open(file);
+               var in = new MappedVarInput(channel, 0, channel.size(), 6, false)){
+               var lengths = decoder.stream(in).parallel().mapToInt(e -> e.bytes().length).toArray();
+               assertEquals(1000, lengths.length);
+               for(int i = 0; i < lengths.length; i++) assertEquals(i % 50, lengths[i]);
+               assertEquals(0, in.remaining());
+           }
+       }finally{
+           Files.delete(file);
+       }
+   }
+   
+   private static void read(MappedVarInput in, byte[] payload) throws IOException {
+       verify(in);
+       var p = in.position();
+       assertTrue(Arrays.equals(payload, in.readBytes()));
+       assertEquals(-1l, in.readLong());
+       assertEquals(0, in.remaining());
+       assertThrows(EOFException.class, () -> in.readByte());
+       
+       in.seek(p);
+       ByteBuffer view = in.readBytesView();
+       assertTrue(view.isReadOnly());
+       var b = new byte[view.remaining()];
+       view.get(b);
+       assertTrue(Arrays.equals(payload, b));
+       assertEquals(-1l, in.readLong());
+   }
+}
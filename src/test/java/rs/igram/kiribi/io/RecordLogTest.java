@@ -0,0 +1,164 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class RecordLogTest {
+   @Test
+   public void testAppendAndIterate() throws Exception {
+       var dir = Files.createTempDirectory("log");
+       try{
+           var offsets = new ArrayList<Long>();
+           try(var log = new RecordLog(dir, 100)){
+               for(int i = 0; i < 50; i++){
+                   offsets.add(log.append(new EncodableBytes(new byte[i])));
+               }
+               assertTrue(Files.list(dir).count() > 1);
+               assertEquals(20, log.read(offsets.get(20), EncodableBytes::new).bytes().length);
+               
+               var it = log.iterator(EncodableBytes::new);
+               for(int i = 0; i < 50; i++) assertEquals(i, it.next().bytes().length);
+               assertFalse(it.hasNext());
+               
+               it = log.iterator(offsets.get(30), EncodableBytes::new);
+               for(int i = 30; i < 50; i++) assertEquals(i, it.next().bytes().length);
+               assertFalse(it.hasNext());
+           }
+           
+           // reopen after a torn write
+           var last = Files.list(dir).max(Comparator.naturalOrder()).get();
+           try(var ch = FileChannel.open(last, StandardOpenOption.WRITE, StandardOpenOption.APPEND)){
+               ch.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 9, 1, 2}));
+           }
+           try(var log = new RecordLog(dir, 100)){
+               var end = log.size();
+               assertEquals(end, log.append(new EncodableBytes(new byte[]{7})));
+               var count = 0;
+               for(var it = log.iterator(EncodableBytes::new); it.hasNext(); it.next()) count++;
+               assertEquals(51, count);
+               assertTrue(Arrays.equals(new byte[]{7}, log.read(end, EncodableBytes::new).bytes()));
+           }
+       }finally{
+           delete(dir);
+       }
+   }
+   
+   @Test
+   public void testConcurrentAppend() throws Exception {
+       var dir = Files.createTempDirectory("log");
+       try{
+           var offsets = ConcurrentHashMap.<Long>newKeySet();
+           try(var log = new RecordLog(dir, 4096)){
+               var threads = new Thread[8];
+               for(int t = 0; t < threads.length; t++){
+                   final var id = t;
+                   threads[t] = new Thread(() -> {
+                       try{
+                           for(int i = 0; i < 100; i++) offsets.add(log.append(new EncodableBytes(new byte[]{(byte)id, (byte)i})));
+                       }catch(IOException e){
+                           throw new RuntimeException(e);
+                       }
+                   });
+                   threads[t].start();
+               }
+               for(var thread : threads) thread.join();
+               assertEquals(800, offsets.size());
+           }
+           try(var log = new RecordLog(dir, 4096)){
+               var seen = new HashSet<Integer>();
+               for(var it = log.iterator(EncodableBytes::new); it.hasNext();){
+                   var b = it.next().bytes();
+                   assertTrue(seen.add(b[0] * 100 + b[1]));
+               }
+               assertEquals(800, seen.size());
+               for(var offset : offsets) assertEquals(2, log.read(offset, EncodableBytes::new).bytes().length);
+           }
+       }finally{
+           delete(dir);
+       }
+   }
+   
+   @Test
+   public void testChecksums() throws Exception {
+       var dir = Files.createTempDirectory("log");
+       try{
+           var offsets = new ArrayList<Long>();
+           try(var log = new RecordLog(dir, 1 << 20)){
+               offsets.add(log.append(new EncodableBytes(new byte[]{1})));
+           }
+           try(var log = new RecordLog(dir, 1 << 20, true)){
+               offsets.add(log.append(new EncodableBytes(new byte[]{2, 2})));
+               offsets.add(log.append(new EncodableBytes(new byte[]{3, 3, 3}).encode()));
+               offsets.add(log.append(new EncodableBytes(new byte[]{4, 4, 4, 4})));
+               assertEquals(2, log.read(offsets.get(1), EncodableBytes::new).bytes().length);
+               var count = 0;
+               for(var it = log.iterator(EncodableBytes::new); it.hasNext(); it.next()) count++;
+               assertEquals(4, count);
+           }
+           
+           // corrupt the last record
+           var segment = Files.list(dir).findFirst().get();
+           var b = Files.readAllBytes(segment);
+           b[b.length - 5] ^= 1;
+           Files.write(segment, b);
+           try(var log = new RecordLog(dir, 1 << 20, true)){
+               assertEquals((long)offsets.get(3), log.size());
+               
+               // and one in the middle
+               b[(int)(offsets.get(1) + 8)] ^= 1;
+               Files.write(segment, Arrays.copyOf(b, (int)log.size()));
+               assertThrows(IOException.class, () -> log.read(offsets.get(1), EncodableBytes::new));
+               var it = log.iterator(EncodableBytes::new);
+               it.next();
+               assertThrows(UncheckedIOException.class, () -> it.next());
+           }
+       }finally{
+           delete(dir);
+       }
+   }
+   
+   private static void delete(Path dir) throws IOException {
+       try(var files = Files.list(dir)){
+           for(var file : (Iterable<Path>)files::iterator) Files.delete(file);
+       }
+       Files.delete(dir);
+   }
+}
@@ -0,0 +1,80 @@
+/* 
+ * MIT License
+ * 
+ * Copyright (c) 2020 Igram, d.o.o.
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+ 
+package rs.igram.kiribi.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class TaggedStreamTest {
+   @Test
+   public void testTaggedStream() throws IOException {
+       var ping = new Ping(42);
+       var registry = new DecoderRegistry()
+           .register(0, EncodableBytes.class, EncodableBytes::new)
+           .register(3, Ping.class, Ping::new);
+       assertThrows(IllegalArgumentException.class, () -> registry.register(3, String.class, in -> ""));
+       assertThrows(IllegalArgumentException.class, () -> registry.register(DecoderRegistry.MAX_TAG + 1, String.class, in -> ""));
+       assertEquals(3, registry.tag(Ping.class));
+       assertEquals(-1, registry.tag(String.class));
+       
+       var bout = new ByteArrayOutputStream();
+       var out = new TaggedStream(ByteStream.stream(null, new VarOutputStream(bout)), registry);
+       out.write(new EncodableBytes(new byte[]{1, 2}));
+       out.write(ping);
+       out.write(7, ping);
+       assertThrows(IOException.class, () -> out.write(new EncodableBytes(new byte[0]) {}));
+       
+       var in = new TaggedStream(ByteStream.stream(new VarInputStream(bout.toByteArray()), null), registry);
+       assertArrayEquals(new byte[]{1, 2}, ((EncodableBytes)in.read()).bytes());
+       assertEquals(42, ((Ping)in.read()).v);
+       assertThrows(IOException.class, () -> in.read());
+       
+       var in2 = new TaggedStream(ByteStream.stream(new VarInputStream(bout.toByteArray()), null), registry);
+       assertThrows(IOException.class, () -> in2.read(3, Ping::new));
+       assertEquals(42, in2.read(3, Ping::new).v);
+       assertEquals(42, in2.read(Ping::new).v);
+   }
+   
+   static class Ping implements Encodable {
+       final int v;
+       
+       Ping(int v) {
+           this.v = v;
+       }
+       
+       Ping(VarInput in) throws IOException {
+           v = in.readInt();
+       }
+       
+       @Override
+       public void write(VarOutput out) throws IOException {
+           out.writeInt(v);
+       }
+   }
+}
@@ -24,15 +24,25 @@
  
 package rs.igram.kiribi.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -191,6 +201,85 @@ public class VarTest {
 
    }     
 
+   @Test
+   public void testReadWriteVarLong128() throws IOException {
+       var values = new long[]{0l, 1l, 0x7Fl, 0x80l, 0x3FFFl, 0x4000l, 60000l, 0xFFFFFFFFl, Long.MAX_VALUE, -1l, Long.MIN_VALUE};
+       for(var l : values){
+           var out = new VarOutputStream();
+           out.writeVarLong128(l);
+           assertEquals(ByteUtils.var128Size(l), out.size());
+           var l2 = in(out).readVarLong128();
+           assertEquals(l, l2);
+       }
+       
+       var out = new VarOutputStream();
+       out.write(new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1});
+       assertThrows(IOException.class, () -> in(out).readVarLong128());
+   }
+
+   @Test
+   public void testReadWriteSignedVar() throws IOException {
+       var values = new long[]{0l, -1l, 1l, -64l, 63l, -65l, 64l, -30000l, 30000l, Long.MAX_VALUE, Long.MIN_VALUE};
+       for(var l : values){
+           var out = new VarOutputStream();
+           out.writeSignedVar(l);
+           assertEquals(ByteUtils.signedVarSize(l), out.size());
+           var l2 = in(out).readSignedVar();
+           assertEquals(l, l2);
+       }
+   }
+
+   @Test
+   public void testReadWriteStrings() throws IOException {
+       var latin1 = new String[]{"", "abc", "caf\u00e9 \u00ff", "x".repeat(70000)};
+       var utf8 = new String[]{"", "abc", "\u00e9\u4e2d\ud83d\ude00", "\ud800 unpaired", "\u4e2d".repeat(30000)};
+       for(var order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}){
+           var outs = new VarOutput[]{
+               new VarOutputStream(),
+               new ByteArrayVarOutput(16),
+               new ByteBufferVarOutput(ByteBuffer.allocateDirect(1 << 20).order(order))
+           };
+           for(var out : outs){
+               var counter = new CountingVarOutput();
+               for(var s : latin1){
+                   out.writeVarChar(s);
+                   counter.writeVarChar(s);
+               }
+               for(var s : utf8){
+                   out.writeString(s);
+                   counter.writeString(s);
+               }
+               var b = out instanceof VarOutputStream ? 
+                   ((VarOutputStream)out).toByteArray() : 
+                   out instanceof ByteArrayVarOutput ? 
+                       ((ByteArrayVarOutput)out).toByteArray() : 
+                       bytes(((ByteBufferVarOutput)out).buffer().flip());
+               assertEquals(counter.size(), b.length);
+               for(var in : new VarInput[]{new VarInputStream(b), new ByteBufferVarInput(b)}){
+                   for(var s : latin1) assertEquals(s, in.readVarChar());
+                   for(var s : utf8){
+                       assertEquals(new String(s.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), in.readString());
+                   }
+               }
+               assertThrows(IOException.class, () -> out.writeVarChar("\u4e2d"));
+           }
+       }
+       
+       // ascii fast path
+       var out = new VarOutputStream();
+       out.writeUTF("plain");
+       out.writeUTF("caf\u00e9\u0000");
+       var in = new ByteBufferVarInput(out.toByteArray());
+       assertEquals("plain", in.readUTF());
+       assertEquals("caf\u00e9\u0000", in.readUTF());
+   }
+   
+   private static byte[] bytes(ByteBuffer buf) {
+       var b = new byte[buf.remaining()];
+       buf.get(b);
+       return b;
+   }
+
    @Test
    public void testReadWriteBigInteger() throws IOException {
        var out = new VarOutputStream();
@@ -228,6 +317,46 @@ public class VarTest {
        assertEquals(src, result);
    }
 
+   @Test
+   public void testReadWriteSocketAddressCached() throws IOException {
+       var addresses = new InetSocketAddress[]{
+           new InetSocketAddress(7777),
+           new InetSocketAddress(InetAddress.getByName("192.168.1.17"), 7778),
+           new InetSocketAddress(InetAddress.getByName("fe80::1:2:3:4"), 65535),
+           new InetSocketAddress(InetAddress.getByName("0:0:0:0:0:ffff:7f00:1"), 0)
+       };
+       var out = new VarOutputStream();
+       var counter = new CountingVarOutput();
+       for(var a : addresses){
+           out.writeSocketAddress(a);
+           counter.writeSocketAddress(a);
+       }
+       var b = out.toByteArray();
+       assertEquals(counter.size(), b.length);
+       
+       var in = new VarInputStream(b);
+       for(var a : addresses) assertEquals(a, in.readSocketAddress());
+       
+       var cache = new AddressCache(100);
+       assertEquals(128, cache.capacity());
+       var first = new InetSocketAddress[addresses.length];
+       in = new VarInputStream(b);
+       for(int i = 0; i < addresses.length; i++){
+           first[i] = in.readSocketAddress(cache);
+           assertEquals(addresses[i], first[i]);
+       }
+       var in2 = new ByteBufferVarInput(b);
+       for(var a : first) assertSame(a, in2.readSocketAddress(cache));
+       
+       assertThrows(IOException.class, () -> new VarInputStream(new byte[18]).readSocketAddress());
+       assertThrows(IOException.class, () -> out.writeSocketAddress(InetSocketAddress.createUnresolved("localhost", 80)));
+       
+       var buf = new byte[40];
+       ByteUtils.inet(buf, 7, addresses[1]);
+       assertSame(ByteUtils.inet(buf, 7, cache), ByteUtils.inet(buf, 7, cache));
+       assertEquals(addresses[1], ByteUtils.inet(buf, 7, cache));
+   }
+
    @Test
    public void testReadWriteEncodable() throws IOException {
        var out = new VarOutputStream();
@@ -311,6 +440,44 @@ public class VarTest {
        assertEquals(si1, si2);
    }    
       
+   @Test
+   public void testReadWritePrimitiveArrays() throws IOException {
+       var longs = new long[2500];
+       for(int i = 0; i < longs.length; i++) longs[i] = random();
+       var ints = new int[] {2245, -238, 3111};
+       var shorts = new short[] {-1, 0, 32767};
+       var doubles = new double[] {-1.5, 0.0, Math.PI, Double.NaN};
+       
+       var out = new VarOutputStream();
+       out.writeLongs(longs);
+       out.writeInts(ints);
+       out.writeShorts(shorts);
+       out.writeDoubles(doubles);
+       out.writeLongs(new long[0]);
+       
+       var in = in(out);
+       assertArrayEquals(longs, in.readLongArray());
+       assertArrayEquals(ints, in.readIntArray());
+       assertArrayEquals(shorts, in.readShortArray());
+       assertArrayEquals(doubles, in.readDoubleArray());
+       assertEquals(0, in.readLongArray().length);
+       
+       in = in(out);
+       var dst = new long[3000];
+       assertEquals(longs.length, in.readLongs(dst));
+       assertArrayEquals(longs, Arrays.copyOf(dst, longs.length));
+       var small = new int[2];
+       var in2 = in;
+       assertThrows(IOException.class, () -> in2.readInts(small));
+       
+       // same wire format as the collection codecs
+       var list = new ArrayList<Integer>();
+       in = in(out);
+       in.readLongArray();
+       in.readInts(list);
+       assertEquals(List.of(2245, -238, 3111), list);
+   }
+
    @Test
    public void testReadWriteEnum() throws IOException {
        var out = new VarOutputStream();
@@ -319,6 +486,27 @@ public class VarTest {
        assertEquals(TestEnum.B, e2);
    }
    
+   @Test
+   public void testWrap() throws IOException {
+       var bout = new ByteArrayOutputStream();
+       var out = VarOutput.of(new DataOutputStream(bout));
+       var t1 = new TestEncodable();
+       out.write(t1);
+       out.writeUInt32(0xFEDCBA98l);
+       out.writeUInt64BE(274211l);
+       out.writeVarInt(0x0001FFFFl);
+       
+       var in = VarInput.of(new DataInputStream(new ByteArrayInputStream(bout.toByteArray())));
+       assertEquals(t1, in.read(TestEncodable::new));
+       assertEquals(0xFEDCBA98l, in.readULong32());
+       assertEquals(274211l, in.readULong64BE());
+       assertEquals(0x0001FFFFl, in.readVarLong());
+       assertThrows(EOFException.class, () -> in.readByte());
+       
+       var vin = new VarInputStream(bout.toByteArray());
+       assertSame(vin, VarInput.of(vin));
+   }
+   
    private static VarInputStream in(VarOutputStream out) {
    	   return new VarInputStream(out.toByteArray());
    }